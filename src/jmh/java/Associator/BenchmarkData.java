@@ -0,0 +1,193 @@
+package Associator;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import weka.associations.AssociationRule;
+import weka.associations.FPGrowth;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Generates synthetic items, transactions and rules for the benchmarks. Everything is generated from a seed, so every
+ * run of a benchmark works on the same data. Items are UUIDs like the skills of the real data, and a few items are far
+ * more popular than the rest.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @return count distinct UUIDs
+     */
+    static List<String> items(int count, long seed) {
+        Random random = new Random(seed);
+        Set<String> items = new LinkedHashSet<>();
+        while (items.size() < count) {
+            items.add(new UUID(random.nextLong(), random.nextLong()).toString());
+        }
+        return new ArrayList<>(items);
+    }
+
+    /**
+     * Picks an item index, the lower indices are picked far more often than the higher ones.
+     */
+    private static int popularItem(Random random, int itemCount) {
+        double value = random.nextDouble();
+        return (int) (value * value * itemCount);
+    }
+
+    /**
+     * Generates rows of comma-separated items like the ones returned by the ASSOCIATOR_DATA_QUERY. Items come in
+     * bundles that are usually taken together, which gives the miners plenty of rules with a high confidence.
+     */
+    static List<String> transactions(List<String> items, int rows, long seed) {
+        Random random = new Random(seed);
+        int bundleSize = 6;
+        int bundleCount = Math.max(1, items.size() / bundleSize);
+        List<String> transactions = new ArrayList<>(rows);
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            row.setLength(0);
+            int bundles = 1 + random.nextInt(3);
+            for (int b = 0; b < bundles; b++) {
+                int bundle = popularItem(random, bundleCount);
+                for (int j = 0; j < bundleSize; j++) {
+                    if (random.nextInt(10) != 0)
+                        append(row, items.get((bundle * bundleSize + j) % items.size()));
+                }
+            }
+            append(row, items.get(random.nextInt(items.size())));
+            transactions.add(row.toString());
+        }
+        return transactions;
+    }
+
+    private static void append(StringBuilder row, String item) {
+        if (row.length() > 0)
+            row.append(',');
+        row.append(item);
+    }
+
+    /**
+     * Converts the rows into instances for weka the same way the AssociatorBuilder does.
+     */
+    static Instances instances(List<String> items, List<String> transactions) {
+        Instances instances = new Instances("theData", new AssociatorBuilder().skillsToAttribute(items), items.size());
+        TransactionParser parser = new TransactionParser(items);
+        for (String transaction : transactions) {
+            instances.add(parser.toInstance(transaction));
+        }
+        return instances;
+    }
+
+    /**
+     * Mines the transactions with weka's FPGrowth until it finds ruleCount rules.
+     */
+    static FPGrowth mine(Instances instances, int ruleCount) throws Exception {
+        FPGrowth fpGrowth = new FPGrowth();
+        fpGrowth.setOptions(new String[]{"-N", Integer.toString(ruleCount), "-C", "0.8", "-U", "0.1", "-D", "0.002", "-M", "0.0005"});
+        fpGrowth.buildAssociations(instances);
+        return fpGrowth;
+    }
+
+    static List<AssociationRule> rules(FPGrowth fpGrowth) {
+        return fpGrowth.getAssociationRules().getRules();
+    }
+
+    /**
+     * Generates random rules over the items without mining, with one or more premise items and one or two consequence
+     * items. The supports are consistent: the total support is never higher than the premise or consequence support.
+     */
+    static List<FakeAssociationRule> randomRules(int ruleCount, int itemCount, long seed) {
+        Random random = new Random(seed);
+        List<FakeAssociationRule> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            Set<Integer> premise = new LinkedHashSet<>();
+            int premiseSize = 1 + random.nextInt(3);
+            while (premise.size() < premiseSize) {
+                premise.add(popularItem(random, itemCount));
+            }
+            Set<Integer> consequence = new LinkedHashSet<>();
+            int consequenceSize = 1 + random.nextInt(2);
+            while (consequence.size() < consequenceSize) {
+                int item = popularItem(random, itemCount);
+                if (!premise.contains(item))
+                    consequence.add(item);
+            }
+            int premiseSupport = 50 + random.nextInt(5000);
+            int totalSupport = 1 + random.nextInt(premiseSupport);
+            int consequenceSupport = totalSupport + random.nextInt(5000);
+            rules.add(new FakeAssociationRule(new ArrayList<>(premise), new ArrayList<>(consequence),
+                    premiseSupport, consequenceSupport, totalSupport));
+        }
+        return rules;
+    }
+
+    /**
+     * @return The dictionary of the items, each item is its position in the list
+     */
+    static ItemDictionary dictionary(List<String> items) {
+        return ItemDictionary.of(items);
+    }
+
+    /**
+     * Picks queries of size attributes each, with popular items picked more often like in real requests.
+     */
+    static List<UseAssociatorPayload> payloads(List<String> items, int count, int size, String method, String identifier, long seed) {
+        Random random = new Random(seed);
+        List<UseAssociatorPayload> payloads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            List<String> attributes = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                attributes.add(items.get(popularItem(random, items.size())));
+            }
+            UseAssociatorPayload payload = new UseAssociatorPayload();
+            payload.setattributes(attributes);
+            payload.setMethod(method);
+            payload.setIdentifier(identifier);
+            payload.insertDefaults();
+            payloads.add(payload);
+        }
+        return payloads;
+    }
+
+    /**
+     * Stores the items as skills of occupations in the context, in the shape that the ATTRIBUTES_QUERY of the Dockerfile asks for.
+     */
+    static void writeSkills(Repository repo, IRI context, List<String> items) {
+        ValueFactory factory = repo.getValueFactory();
+        String esco = "http://data.europa.eu/esco/model#";
+        String skosxl = "http://www.w3.org/2008/05/skos-xl#";
+        String mu = "http://mu.semte.ch/vocabularies/core/";
+        String data = "http://example.org/benchmark/";
+        IRI occupation = factory.createIRI(data, "occupation");
+        IRI uuid = factory.createIRI(mu, "uuid");
+        IRI prefLabel = factory.createIRI(skosxl, "prefLabel");
+        IRI literalForm = factory.createIRI(skosxl, "literalForm");
+        try (RepositoryConnection conn = repo.getConnection()) {
+            conn.begin();
+            conn.add(occupation, RDF.TYPE, factory.createIRI(esco, "Occupation"), context);
+            for (int i = 0; i < items.size(); i++) {
+                IRI skill = factory.createIRI(data, "skill/" + i);
+                IRI relation = factory.createIRI(data, "relation/" + i);
+                IRI label = factory.createIRI(data, "label/" + i);
+                conn.add(relation, factory.createIRI(esco, "isRelationshipFor"), occupation, context);
+                conn.add(relation, factory.createIRI(esco, "refersConcept"), skill, context);
+                conn.add(skill, prefLabel, label, context);
+                conn.add(label, literalForm, factory.createLiteral("skill " + i, "en"), context);
+                conn.add(skill, uuid, factory.createLiteral(items.get(i)), context);
+            }
+            conn.commit();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package Associator;
+
+import Main.Metadata;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.associations.FPGrowth;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a model with each storage method. The rules are mined by weka's FPGrowth from synthetic
+ * transactions and stored like the AssociatorBuilder stores them: in /data for the files, and in an in-memory
+ * repository for the triplestore. The triplestore case needs the GRAPH and ATTRIBUTES_QUERY environmental variables of
+ * the Dockerfile, the skills are stored in the shape that its ATTRIBUTES_QUERY asks for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadModelBenchmark {
+
+    private static final int ITEMS = 2000;
+    private static final int TRANSACTIONS = 20000;
+
+    @Param({"1000", "10000"})
+    public int ruleCount;
+
+    @Param({"native", "RDFFile", "binary", "triplestore"})
+    public String method;
+
+    private String identifier;
+    private Repository repo;
+    private UseAssociatorPayload payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<String> items = BenchmarkData.items(ITEMS, 1);
+        FPGrowth fpGrowth = BenchmarkData.mine(BenchmarkData.instances(items, BenchmarkData.transactions(items, TRANSACTIONS, 2)), ruleCount);
+        identifier = "benchmark-" + UUID.randomUUID();
+        AssociatorBuilder builder = new AssociatorBuilder();
+        builder.loadHashMaps(items);
+        List<FakeAssociationRule> reducedRules = builder.reduceRules(builder.realToFakeRules(BenchmarkData.rules(fpGrowth)));
+        Metadata metadata = new Metadata(0, "benchmark", "FPGROWTH", ruleCount, "");
+        AssociatorWriter writer = new AssociatorWriter();
+        switch (method) {
+            case "native":
+                writer.toNativeFile(fpGrowth, identifier);
+                break;
+            case "RDFFile":
+                writer.toRDFFile(builder.intToStringRules(reducedRules), metadata, identifier);
+                break;
+            case "binary":
+                writer.toBinaryFile(reducedRules, BenchmarkData.dictionary(items), identifier);
+                break;
+            case "triplestore":
+                if (System.getenv("GRAPH") == null || System.getenv("ATTRIBUTES_QUERY") == null)
+                    throw new IllegalStateException("The triplestore benchmark needs the GRAPH and ATTRIBUTES_QUERY environmental variables of the Dockerfile");
+                repo = new SailRepository(new MemoryStore());
+                repo.initialize();
+                BenchmarkData.writeSkills(repo, repo.getValueFactory().createIRI(System.getenv("GRAPH")), items);
+                writer.RDFtoTripleStore(builder.intToStringRules(reducedRules), repo, metadata, identifier);
+                break;
+            default:
+                throw new IllegalArgumentException(method);
+        }
+        payload = BenchmarkData.payloads(items, 1, 1, method, identifier, 3).get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new File("/data/" + identifier + ".model").delete();
+        new File("/data/" + identifier + ".rdf").delete();
+        new File("/data/" + identifier + ".bin").delete();
+        if (repo != null)
+            repo.shutDown();
+    }
+
+    @Benchmark
+    public FrequentItemSetCalculator loadModel() {
+        FrequentItemSetCalculator calculator = new FrequentItemSetCalculator();
+        calculator.loadModel(repo, payload);
+        return calculator;
+    }
+}
@@ -0,0 +1,60 @@
+package Associator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.associations.AssociationRule;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of mined weka rules before they are stored: realToFakeRules, which converts the items
+ * of the rules to integers, and reduceRules, which merges the rules with the same premise.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuleConversionBenchmark {
+
+    private static final int ITEMS = 2000;
+    private static final int TRANSACTIONS = 20000;
+
+    @Param({"1000", "10000"})
+    public int ruleCount;
+
+    private AssociatorBuilder builder;
+    private List<AssociationRule> rules;
+    private List<FakeAssociationRule> fakeRules;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<String> items = BenchmarkData.items(ITEMS, 1);
+        rules = BenchmarkData.rules(BenchmarkData.mine(BenchmarkData.instances(items, BenchmarkData.transactions(items, TRANSACTIONS, 2)), ruleCount));
+        builder = new AssociatorBuilder();
+        builder.loadHashMaps(items);
+        fakeRules = builder.realToFakeRules(rules);
+    }
+
+    @Benchmark
+    public List<FakeAssociationRule> realToFakeRules() {
+        return builder.realToFakeRules(rules);
+    }
+
+    @Benchmark
+    public List<FakeAssociationRule> reduceRules() {
+        return builder.reduceRules(fakeRules);
+    }
+}
@@ -0,0 +1,91 @@
+package Associator;
+
+import Main.Metadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the queries on a loaded model, getFrequentItems and the first page of getRelatedRules, for several amounts of rules.
+ * The model is written to /data and loaded like a real model, from a RDF file into a RuleStore or from a memory mapped
+ * binary file. Every call uses the next of a fixed set of queries of five attributes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuleQueryBenchmark {
+
+    private static final int ITEMS = 2000;
+    private static final int QUERIES = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    public int ruleCount;
+
+    @Param({"RDFFile", "binary"})
+    public String method;
+
+    private String identifier;
+    private FrequentItemSetCalculator calculator;
+    private List<UseAssociatorPayload> payloads;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> items = BenchmarkData.items(ITEMS, 1);
+        List<FakeAssociationRule> rules = BenchmarkData.randomRules(ruleCount, ITEMS, 2);
+        identifier = "benchmark-" + UUID.randomUUID();
+        AssociatorBuilder builder = new AssociatorBuilder();
+        builder.loadHashMaps(items);
+        AssociatorWriter writer = new AssociatorWriter();
+        if (method.equals("binary")) {
+            writer.toBinaryFile(builder.reduceRules(rules), BenchmarkData.dictionary(items), identifier);
+        } else {
+            Metadata metadata = new Metadata(0, "benchmark", "FPGROWTH", ruleCount, "");
+            writer.toRDFFile(builder.intToStringRules(builder.reduceRules(rules)), metadata, identifier);
+        }
+        payloads = BenchmarkData.payloads(items, QUERIES, 5, method, identifier, 3);
+        calculator = new FrequentItemSetCalculator();
+        calculator.loadModel(null, payloads.get(0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new File("/data/" + identifier + ".bin").delete();
+        new File("/data/" + identifier + ".rdf").delete();
+    }
+
+    private UseAssociatorPayload nextPayload() {
+        next = (next + 1) & (QUERIES - 1);
+        return payloads.get(next);
+    }
+
+    @Benchmark
+    public List<FrequentItem> frequentItems() {
+        return calculator.getFrequentItems(nextPayload());
+    }
+
+    @Benchmark
+    public Integer relatedRules(Blackhole blackhole) throws IOException {
+        return calculator.getRelatedRules(nextPayload(), blackhole::consume);
+    }
+}
@@ -0,0 +1,113 @@
+package Classifier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.trees.RandomTree;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures classifyString on a RandomTree built from a synthetic dataset, with weka and with the compiled tree.
+ * One operation classifies the whole matrix of rows. The model is written to /data and loaded like a real model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassifyBenchmark {
+
+    private static final int FEATURES = 10;
+    private static final int TRAINING_ROWS = 5000;
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private String identifier;
+    private RandomTreeClassifier classifier;
+    private String[][] matrix;
+
+    /**
+     * Generates a dataset in which the class depends on a few of the features, with some noise.
+     */
+    private static Instances dataset(ArrayList<Attribute> header, int size, Random random) {
+        Instances instances = new Instances("theData", header, size);
+        instances.setClassIndex(FEATURES);
+        for (int i = 0; i < size; i++) {
+            double[] values = new double[FEATURES + 1];
+            for (int j = 0; j < FEATURES; j++) {
+                values[j] = random.nextInt(100);
+            }
+            boolean yes = values[0] + values[1] > 100 || values[2] < 10;
+            if (random.nextInt(10) == 0)
+                yes = !yes;
+            values[FEATURES] = yes ? 0 : 1;
+            instances.add(new DenseInstance(1, values));
+        }
+        return instances;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random random = new Random(1);
+        List<String> names = new ArrayList<>();
+        ArrayList<Attribute> header = new ArrayList<>();
+        for (int i = 0; i < FEATURES; i++) {
+            names.add("feature" + i);
+            header.add(new Attribute("feature" + i, Attribute.NUMERIC));
+        }
+        names.add("class");
+        header.add(new Attribute("class", Arrays.asList("yes", "no")));
+        RandomTree tree = new RandomTree();
+        tree.buildClassifier(dataset(header, TRAINING_ROWS, random));
+        identifier = "benchmark-" + UUID.randomUUID();
+        new ClassifierWriter().toNativeFile(tree, header, names, identifier);
+
+        UseClassifierPayload payload = new UseClassifierPayload();
+        payload.setIdentifier(identifier);
+        classifier = new RandomTreeClassifier();
+        classifier.loadModelFromNative(payload);
+        matrix = new String[rows][FEATURES];
+        for (String[] row : matrix) {
+            for (int j = 0; j < FEATURES; j++) {
+                row[j] = Integer.toString(random.nextInt(100));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new File("/data/" + identifier + ".model").delete();
+        new File("/data/" + identifier + "-oldheader.model").delete();
+        new File("/data/" + identifier + "-newheader.model").delete();
+    }
+
+    @Benchmark
+    public double[][] classifyString() throws Exception {
+        return classifier.classifyString(matrix, compiled);
+    }
+}
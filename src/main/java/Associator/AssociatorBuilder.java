@@ -1,18 +1,24 @@
 package Associator;
 
 import Main.Algorithm;
+import Main.DatasetSnapshot;
 import Main.Metadata;
+import Main.Metrics;
+import Main.SweepRun;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import weka.associations.*;
 import weka.core.Attribute;
-import weka.core.BinarySparseInstance;
 import weka.core.Instances;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -20,37 +26,20 @@ import java.util.*;
  */
 public class AssociatorBuilder {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(AssociatorBuilder.class);
+
     /**
-     * These hashmaps are used to save memory and cpu cycles. When loading the AssociationRules each unique UUID is
+     * This dictionary is used to save memory and cpu cycles. When loading the AssociationRules each unique UUID is
      * mapped to an integer. All calculations are done on these integers. When a result needs to be returned the
-     * integers are converted back into strings. There are NOT related to the stringToSparseHash.
+     * integers are converted back into strings. It is NOT related to the stringToSparseHash.
      */
-    private HashMap<String, Integer> stringToIntegerHash = new HashMap<>();
-    private HashMap<Integer, String> integerToStringHash = new HashMap<>();
+    private ItemDictionary dictionary = new ItemDictionary();
 
     /**
      * The UUID of the last build model so that it can be given to the user.
      */
     private String newestUuid;
 
-    /**
-     * Converts a string, consisting of comma-separated uuid strings, into an instance that can be used by weka. It uses
-     * a hashmap to convert the strings into a sparse vector.
-     *
-     * @param stringToSparseHash The hashmap which converts each uuid string into the appropriate indice in the sparse vector
-     * @param newLine            A string consisting of comma-separated uuid strings which represent a row in the data
-     * @return A new instance for weka
-     */
-    private BinarySparseInstance stringToInstance(HashMap<String, Integer> stringToSparseHash, String newLine) {
-        String[] features = newLine.split(",");
-        int[] indices = new int[features.length];
-        for (int i = 0; i < features.length; i++) {
-            indices[i] = stringToSparseHash.get(features[i]);
-        }
-        return new BinarySparseInstance(1, indices, stringToSparseHash.size());
-    }
-
-
     private TupleQueryResult getAttributes(RepositoryConnection conn) {
         String queryString = System.getenv("ATTRIBUTES_QUERY");
         TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, queryString);
@@ -68,7 +57,7 @@ public class AssociatorBuilder {
         return strings;
     }
 
-    private ArrayList<Attribute> skillsToAttribute(List<String> skills) {
+    ArrayList<Attribute> skillsToAttribute(List<String> skills) {
         ArrayList<Attribute> attrs = new ArrayList<>();
         List<String> tempBooleanValues = new ArrayList<>();
         tempBooleanValues.add("0");
@@ -79,24 +68,15 @@ public class AssociatorBuilder {
         return attrs;
     }
 
-    private HashMap<String, Integer> createStringToIntegerHash(List<String> skills) {
-        HashMap<String, Integer> someTable = new HashMap<>();
-        for (int i = 0; i < skills.size(); i++) {
-            someTable.put(skills.get(i), i);
-        }
-        return someTable;
-    }
-
-    private HashMap<Integer, String> createIntegerToStringHash(List<String> skills) {
-        HashMap<Integer, String> someTable = new HashMap<>();
-        for (int i = 0; i < skills.size(); i++) {
-            someTable.put(i, skills.get(i));
-        }
-        return someTable;
-    }
-
     /**
      * Builds an AbstractAssociator. The results from the data query are converted into sparse vectors, for example: [a,z,f] with the alphabet as attributes -> [1000010..01]
+     * If the payload has a base identifier, the data is not queried. The model is built from the transactions that were
+     * kept of that model instead, with the added and removed transactions of the payload applied. This finds the same
+     * rules as a full build on the updated data with the same options, as long as the attributes did not change.
+     * If the payload asks to keep the transactions, they are written to /data next to the model, so the new model can be
+     * updated in the same way. Nothing deletes these files, so only models that will be updated should keep them.
+     * If the payload asks for a snapshot, the parsed transactions of a full build are stored as a DatasetSnapshot, and
+     * are read from it by later builds with the same queries.
      *
      * @param repo    The repository from which to get the data and attributes
      * @param payload Contains the algorithm to make the model with, the options for the algorithm and the method of storage for the resulting model/rules
@@ -104,83 +84,249 @@ public class AssociatorBuilder {
      * @throws IllegalArgumentException The given algorithm is not a valid algorithm
      */
     public Metadata buildModel(Repository repo, BuildModelPayload payload) throws IllegalArgumentException {
-        RepositoryConnection conn = repo.getConnection();
-        String queryString = System.getenv("ASSOCIATOR_DATA_QUERY");
-        TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, queryString);
-
         try {
-            TupleQueryResult result = tupleQuery.evaluate();
-            List<String> bindingNames = result.getBindingNames();
-            TupleQueryResult skills = getAttributes(conn);
-            ArrayList<String> skillsAsStrings = skillsToStrings(skills);
-            HashMap<String, Integer> DenseToSparseHash = createStringToIntegerHash(skillsAsStrings);
-            Instances instanceList = new Instances("theData", skillsToAttribute(skillsAsStrings), skillsAsStrings.size());
+            return buildFrom(repo, ingest(repo, payload), payload, null);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Builds a model for every set of options of a sweep. The data is queried and parsed only once, and the models are
+     * built from it in parallel, see SweepRun.runAll. The weka algorithms only read their instances, so all runs share
+     * the same instances as well. The runs of a sweep do not keep their transactions.
+     *
+     * @param repo    The repository from which to get the data and attributes
+     * @param payload Contains the algorithm, the sets of options and the method of storage of the models
+     * @return The model id and metadata, or the error, of the run of every set of options, in the order of the sets
+     * @throws Exception The data could not be queried or read from the snapshot
+     */
+    public List<SweepRun> sweep(Repository repo, SweepPayload payload) throws Exception {
+        Ingestion ingestion = ingest(repo, payload.toBuildModelPayload(null));
+        Instances instances = payload.getAlgorithm() == Algorithm.PARALLEL_FPGROWTH ? null : ingestion.toInstances();
+        return SweepRun.runAll(payload.getOptionSets(), options -> {
+            AssociatorBuilder builder = new AssociatorBuilder();
+            Metadata metadata = builder.buildFrom(repo, ingestion, payload.toBuildModelPayload(options), instances);
+            return new SweepRun(options, builder.getNewestUuid(), metadata);
+        });
+    }
 
-            while (result.hasNext()) {
-                BindingSet bindingSet = result.next();
-                String newLine = bindingSet.getValue(bindingNames.get(0)).stringValue();
-                BinarySparseInstance newestInstance = stringToInstance(DenseToSparseHash, newLine);
-                instanceList.add(newestInstance);
+    /**
+     * The transactions a model is built from and how they were obtained.
+     */
+    private final class Ingestion {
+        private TransactionState state;
+        private TransactionParser parser;
+        private long time;
+        private File snapshot;
+        private boolean snapshotRead;
+
+        Instances toInstances() {
+            List<String> attributes = state.getAttributes();
+            Instances instances = new Instances("theData", skillsToAttribute(attributes), state.getTransactionCount());
+            state.addTo(instances);
+            return instances;
+        }
+    }
+
+    /**
+     * Gets the transactions of a build: from the kept transactions of the base model for an incremental build, from the
+     * snapshot if it may be read, or else by querying the triplestore.
+     */
+    private Ingestion ingest(Repository repo, BuildModelPayload payload) throws Exception {
+        Ingestion ingestion = new Ingestion();
+        // the snapshot holds the parsed transactions, which depend on both the attributes and the data query
+        File snapshot = payload.getSnapshot() == null ? null
+                : DatasetSnapshot.fileOf("associator", System.getenv("ATTRIBUTES_QUERY"), System.getenv("ASSOCIATOR_DATA_QUERY"));
+        boolean snapshotRead = !payload.isIncremental() && DatasetSnapshot.shouldRead(payload.getSnapshot(), snapshot);
+        long ingestionStart = System.currentTimeMillis();
+        TransactionState state;
+        TransactionParser parser;
+        if (payload.isIncremental()) {
+            state = TransactionState.read(TransactionState.fileOf(payload.getBaseIdentifier()));
+            parser = new TransactionParser(state.getAttributes());
+            addRows(payload.getAddedTransactions(), parser, state, 1);
+            addRows(payload.getRemovedTransactions(), parser, state, -1);
+            if (payload.isQueryDelta()) {
+                RepositoryConnection conn = repo.getConnection();
+                addQueryRows(conn, "ASSOCIATOR_ADDED_QUERY", parser, state, 1);
+                addQueryRows(conn, "ASSOCIATOR_REMOVED_QUERY", parser, state, -1);
+                conn.close();
             }
-            result.close();
+        } else if (snapshotRead) {
+            state = TransactionState.read(snapshot);
+            parser = new TransactionParser(state.getAttributes());
+        } else {
+            RepositoryConnection conn = repo.getConnection();
+            TupleQueryResult skills = getAttributes(conn);
+            ArrayList<String> skillsAsStrings = skillsToStrings(skills);
+            state = new TransactionState(skillsAsStrings);
+            parser = new TransactionParser(skillsAsStrings);
+            addQueryRows(conn, "ASSOCIATOR_DATA_QUERY", parser, state, 1);
             conn.close();
+            if (snapshot != null) {
+                try {
+                    state.write(snapshot);
+                } catch (IOException e) {
+                    // the transactions are in memory, so the model is still built, the next build queries the data again
+                    LOGGER.error("Could not write the snapshot {}", snapshot, e);
+                }
+            }
+        }
+        ingestion.state = state;
+        ingestion.parser = parser;
+        ingestion.time = System.currentTimeMillis() - ingestionStart;
+        ingestion.snapshot = snapshot;
+        ingestion.snapshotRead = snapshotRead;
+        return ingestion;
+    }
 
-            Algorithm algorithm = payload.getAlgorithm();
-            AbstractAssociator associator;
-            switch (algorithm) {
-                case APRIORI: {
-                    associator = new Apriori();
-                    break;
+    /**
+     * Mines the rules of the transactions and writes the model.
+     *
+     * @param instances The transactions as instances for the weka algorithms, or null to make them from the transactions
+     */
+    private Metadata buildFrom(Repository repo, Ingestion ingestion, BuildModelPayload payload, Instances instances) throws Exception {
+        String queryString = System.getenv("ASSOCIATOR_DATA_QUERY");
+        TransactionState state = ingestion.state;
+        TransactionParser parser = ingestion.parser;
+        List<String> skillsAsStrings = state.getAttributes();
+        Algorithm algorithm = payload.getAlgorithm();
+        // the built-in FP-Growth takes every distinct transaction once with its count, it does not need any weka Instances
+        ParallelFPGrowth parallelFPGrowth = null;
+        Instances instanceList = null;
+        if (algorithm == Algorithm.PARALLEL_FPGROWTH) {
+            parallelFPGrowth = new ParallelFPGrowth(skillsAsStrings);
+            state.addTo(parallelFPGrowth);
+        } else {
+            instanceList = instances != null ? instances : ingestion.toInstances();
+        }
 
-                }
-                case FPGROWTH: {
-                    associator = new FPGrowth();
-                    break;
-                }
-                default:
-                    throw new IllegalArgumentException();
+        AbstractAssociator associator = null;
+        switch (algorithm) {
+            case APRIORI: {
+                associator = new Apriori();
+                break;
+
+            }
+            case FPGROWTH: {
+                associator = new FPGrowth();
+                break;
             }
-            String[] options = payload.getOptions();
+            case PARALLEL_FPGROWTH:
+                break;
+            default:
+                throw new IllegalArgumentException();
+        }
+        String[] options = payload.getOptions();
+        List<AssociationRule> rules = null;
+        List<FakeAssociationRule> minedRules = null;
+        long startTime = System.currentTimeMillis();
+        if (associator != null) {
             associator.setOptions(options);
-            long startTime = System.currentTimeMillis();
             associator.buildAssociations(instanceList);
-            long endTime = System.currentTimeMillis();
-            long runtime = endTime - startTime;
-            String concatenatedOptions = "";
-            for (String optionValue : options) {
-                concatenatedOptions += optionValue;
-            }
-            List<AssociationRule> rules = getRules(associator);
+            rules = getRules(associator);
+        } else {
+            parallelFPGrowth.setOptions(options);
+            minedRules = parallelFPGrowth.buildAssociations();
+        }
+        long endTime = System.currentTimeMillis();
+        long runtime = endTime - startTime;
+        String concatenatedOptions = "";
+        for (String optionValue : options) {
+            concatenatedOptions += optionValue;
+        }
+        int ruleCount = rules != null ? rules.size() : minedRules.size();
 
-            Metadata metadata = new Metadata(runtime, queryString, algorithm.toString(), rules.size(), concatenatedOptions);
-            com.eaio.uuid.UUID uuid = new com.eaio.uuid.UUID();
-            setNewestUuid(uuid.toString());
-            AssociatorWriter modelWriter = new AssociatorWriter();
-            switch (payload.getMethod()) {
-                case ("triplestore"): {
-                    loadHashMapsFromTripleStore(repo);
-                    List<FakeAssociationRule> filteredRules = reduceRules(realToFakeRules(rules));
-                    List<StringFakeAssociationRule> stringRules = intToStringRules(filteredRules);
-                    modelWriter.RDFtoTripleStore(stringRules, repo, metadata, uuid.toString());
-                    break;
-                }
-                case ("native"):
-                    modelWriter.toNativeFile(associator, uuid.toString());
-                    break;
-                case ("RDFFile"):
-                    loadHashMapsFromTripleStore(repo);
-                    List<FakeAssociationRule> filteredRules = reduceRules(realToFakeRules(rules));
-                    List<StringFakeAssociationRule> stringRules = intToStringRules(filteredRules);
-                    modelWriter.toRDFFile(stringRules, metadata, uuid.toString());
-                    break;
-                default:
-                    throw new IllegalArgumentException();
+        Metadata metadata = new Metadata(runtime, queryString, algorithm.toString(), ruleCount, concatenatedOptions);
+        metadata.setIngestion(ingestion.time, parser.getRows(), parser.getItems(), parser.getUnknownItems());
+        metadata.setTransactions(payload.getBaseIdentifier(), state.getTransactionCount(), state.getDistinctCount());
+        if (ingestion.snapshot != null)
+            metadata.setSnapshot(ingestion.snapshot.getName(), ingestion.snapshotRead);
+        com.eaio.uuid.UUID uuid = new com.eaio.uuid.UUID();
+        setNewestUuid(uuid.toString());
+        AssociatorWriter modelWriter = new AssociatorWriter();
+        String method = payload.getMethod();
+        if (method.equals("native") && associator == null)
+            throw new IllegalArgumentException("A " + algorithm + " model can not be stored as a native weka file");
+        List<FakeAssociationRule> fakeRules = null;
+        if (!method.equals("native")) {
+            // the rules refer to the attributes by their position in skillsAsStrings, so the hashmaps are made from the same list
+            loadHashMaps(skillsAsStrings);
+            fakeRules = minedRules != null ? minedRules : realToFakeRules(rules);
+        }
+        switch (method) {
+            case ("triplestore"): {
+                List<FakeAssociationRule> filteredRules = reduceRules(fakeRules);
+                List<StringFakeAssociationRule> stringRules = intToStringRules(filteredRules);
+                modelWriter.RDFtoTripleStore(stringRules, repo, metadata, uuid.toString());
+                break;
             }
-            return metadata;
-        } catch (Exception e) {
-            e.printStackTrace();
+            case ("native"):
+                modelWriter.toNativeFile(associator, uuid.toString());
+                break;
+            case ("RDFFile"):
+                List<FakeAssociationRule> filteredRules = reduceRules(fakeRules);
+                List<StringFakeAssociationRule> stringRules = intToStringRules(filteredRules);
+                modelWriter.toRDFFile(stringRules, metadata, uuid.toString());
+                break;
+            case ("binary"): {
+                List<FakeAssociationRule> reducedRules = reduceRules(fakeRules);
+                modelWriter.toBinaryFile(reducedRules, dictionary, uuid.toString());
+                break;
+            }
+            default:
+                throw new IllegalArgumentException();
         }
-        return null;
+        if (payload.isKeepTransactions()) {
+            try {
+                state.write(TransactionState.fileOf(uuid.toString()));
+            } catch (IOException e) {
+                // the model itself is usable, it can only not be updated incrementally
+                LOGGER.error("Could not keep the transactions of model {}", uuid, e);
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Parses rows of comma-separated items and adds them to the transactions, or removes them if the count is negative.
+     */
+    private void addRows(List<String> rows, TransactionParser parser, TransactionState state, int count) {
+        if (rows == null)
+            return;
+        for (String row : rows) {
+            int length = parser.parse(row);
+            state.add(parser.getParsedItems(), length, count);
+        }
+    }
+
+    /**
+     * Evaluates the query in the given environmental variable and adds the rows it returns to the transactions, or
+     * removes them if the count is negative. The first binding of every result is a row of comma-separated items, like
+     * the results of ASSOCIATOR_DATA_QUERY.
+     *
+     * @throws IllegalArgumentException The environmental variable is not set
+     */
+    private void addQueryRows(RepositoryConnection conn, String queryVariable, TransactionParser parser,
+                              TransactionState state, int count) throws IllegalArgumentException {
+        String queryString = System.getenv(queryVariable);
+        if (queryString == null || queryString.isEmpty())
+            throw new IllegalArgumentException(queryVariable + " is not set");
+        TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, queryString);
+        long queryStart = Metrics.start();
+        TupleQueryResult result = tupleQuery.evaluate();
+        Metrics.SPARQL_QUERY_DURATION.observeSince(queryStart, "associator");
+        String bindingName = result.getBindingNames().get(0);
+        long transferStart = Metrics.start();
+        while (result.hasNext()) {
+            BindingSet bindingSet = result.next();
+            int length = parser.parse(bindingSet.getValue(bindingName).stringValue());
+            state.add(parser.getParsedItems(), length, count);
+        }
+        result.close();
+        Metrics.SPARQL_TRANSFER_DURATION.observeSince(transferStart, "associator");
     }
 
     List<AssociationRule> getRules(AbstractAssociator associatior) throws IllegalArgumentException {
@@ -195,26 +341,20 @@ public class AssociatorBuilder {
 
     }
 
-    private void loadHashMapsFromTripleStore(Repository repo) {
-        RepositoryConnection conn = repo.getConnection();
-        List<String> skillsAsStrings = skillsToStrings(getAttributes(conn));
-        stringToIntegerHash = createStringToIntegerHash(skillsAsStrings);
-        integerToStringHash = createIntegerToStringHash(skillsAsStrings);
-        conn.close();
+    void loadHashMaps(List<String> skillsAsStrings) {
+        dictionary = ItemDictionary.of(skillsAsStrings);
     }
 
-    private List<FakeAssociationRule> realToFakeRules(List<AssociationRule> rules) {
+    List<FakeAssociationRule> realToFakeRules(List<AssociationRule> rules) {
         List<FakeAssociationRule> newRules = new ArrayList<>();
         for (AssociationRule rule : rules) {
             List<Integer> premiseAsIntegers = new ArrayList<>();
             for (Item premise : rule.getPremise()) {
-                Integer convertedValue = stringToIntegerHash.get(premise.toString().split("=")[0]);
-                premiseAsIntegers.add(convertedValue);
+                premiseAsIntegers.add(toInteger(premise.toString().split("=")[0]));
             }
             List<Integer> consequenceAsIntegers = new ArrayList<>();
             for (Item consequence : rule.getConsequence()) {
-                Integer convertedValue = stringToIntegerHash.get(consequence.toString().split("=")[0]);
-                consequenceAsIntegers.add(convertedValue);
+                consequenceAsIntegers.add(toInteger(consequence.toString().split("=")[0]));
             }
             FakeAssociationRule newRule = new FakeAssociationRule(premiseAsIntegers, consequenceAsIntegers,
                     rule.getPremiseSupport(), rule.getConsequenceSupport(), rule.getTotalSupport());
@@ -223,18 +363,24 @@ public class AssociatorBuilder {
         return newRules;
     }
 
-    private List<StringFakeAssociationRule> intToStringRules(List<FakeAssociationRule> rules) {
+    /**
+     * @return The integer of the item, or null if it is not in the dictionary
+     */
+    private Integer toInteger(String item) {
+        int integer = dictionary.getInteger(item);
+        return integer == RuleStore.UNKNOWN_ITEM ? null : integer;
+    }
+
+    List<StringFakeAssociationRule> intToStringRules(List<FakeAssociationRule> rules) {
         List<StringFakeAssociationRule> newRules = new ArrayList<>();
         for (FakeAssociationRule rule : rules) {
             List<String> premiseAsStrings = new ArrayList<>();
             for (Integer premise : rule.getPremise()) {
-                String convertedValue = integerToStringHash.get(premise);
-                premiseAsStrings.add(convertedValue);
+                premiseAsStrings.add(premise == null ? null : dictionary.getString(premise));
             }
             List<String> consequenceAsStrings = new ArrayList<>();
             for (Integer consequence : rule.getConsequence()) {
-                String convertedValue = integerToStringHash.get(consequence);
-                consequenceAsStrings.add(convertedValue);
+                consequenceAsStrings.add(consequence == null ? null : dictionary.getString(consequence));
             }
             StringFakeAssociationRule newRule = new StringFakeAssociationRule(premiseAsStrings, consequenceAsStrings,
                     rule.getPremiseSupport(), rule.getConsequenceSupport(), rule.getTotalSupport());
@@ -250,7 +396,7 @@ public class AssociatorBuilder {
      * @return
      * The reduced rules
      */
-    private List<FakeAssociationRule> reduceRules(List<FakeAssociationRule> oldRules) {
+    List<FakeAssociationRule> reduceRules(List<FakeAssociationRule> oldRules) {
 
         HashMap<List<Integer>, List<Integer>> someTable = new HashMap<>();
         for (int i = 0; i < oldRules.size(); i++) {
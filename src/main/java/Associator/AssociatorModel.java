@@ -0,0 +1,93 @@
+package Associator;
+
+/**
+ * An immutable snapshot of a loaded associator model: the rules, the index on those rules and the dictionary that
+ * converts items between strings and integers. A FrequentItemSetCalculator builds a complete new snapshot when it loads a model
+ * and only then publishes it, so requests that are running on the previous snapshot are never affected by a load.
+ */
+class AssociatorModel {
+
+    private final RuleStore rules;
+    private final RuleIndex ruleIndex;
+    private final ItemDictionary dictionary;
+    /**
+     * Whether the rules are ordered from the highest to the lowest total support, which lets a query for the top
+     * frequent items stop as soon as it has enough of them. Binary rule files written before the rules were sorted are not.
+     */
+    private final boolean sortedBySupport;
+    /**
+     * The index from items to the rules that contain them, built the first time related rules are asked for since most
+     * models are only used to determine frequent items.
+     */
+    private volatile ItemRuleIndex itemRuleIndex;
+
+    /**
+     * @param rules               The loaded rules, they must not be changed anymore after this
+     * @param ruleIndex           The index on the loaded rules
+     * @param dictionary Converts the items of the rules between strings and integers, it must not be changed anymore after this
+     */
+    AssociatorModel(RuleStore rules, RuleIndex ruleIndex, ItemDictionary dictionary) {
+        this.rules = rules;
+        this.ruleIndex = ruleIndex;
+        this.dictionary = dictionary;
+        this.sortedBySupport = rules.isSortedByTotalSupport();
+    }
+
+    /**
+     * Creates a model from rules that were added one by one. The rules are sorted on their total support and the
+     * index is built on the sorted rules.
+     *
+     * @param rules               The loaded rules, they must not be changed anymore after this
+     * @param dictionary Converts the items of the rules between strings and integers, it must not be changed anymore after this
+     */
+    static AssociatorModel of(RuleStore rules, ItemDictionary dictionary) {
+        rules.trim();
+        RuleStore sortedRules = rules.sortedByTotalSupport();
+        return new AssociatorModel(sortedRules, new RuleIndex(sortedRules), dictionary);
+    }
+
+    /**
+     * @return A model without any rules, used before the first model is loaded
+     */
+    static AssociatorModel empty() {
+        return of(new RuleStore(), new ItemDictionary());
+    }
+
+    RuleStore getRules() {
+        return rules;
+    }
+
+    RuleIndex getRuleIndex() {
+        return ruleIndex;
+    }
+
+    ItemRuleIndex getItemRuleIndex() {
+        ItemRuleIndex index = itemRuleIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = itemRuleIndex;
+                if (index == null) {
+                    index = new ItemRuleIndex(rules);
+                    itemRuleIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return An estimate of the memory used by the index from items to rules, 0 if it is not built yet
+     */
+    long estimateItemRuleIndexMemory() {
+        ItemRuleIndex index = itemRuleIndex;
+        return index == null ? 0 : index.estimateMemory();
+    }
+
+    boolean isSortedBySupport() {
+        return sortedBySupport;
+    }
+
+    ItemDictionary getDictionary() {
+        return dictionary;
+    }
+}
@@ -1,22 +1,26 @@
 package Associator;
 
 import Main.Metadata;
+import org.eclipse.rdf4j.RDF4JException;
 import org.eclipse.rdf4j.model.IRI;
-import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.ValueFactory;
-import org.eclipse.rdf4j.model.impl.LinkedHashModel;
 import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.repository.sail.SailRepository;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFWriter;
 import org.eclipse.rdf4j.rio.Rio;
 import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import weka.associations.AbstractAssociator;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -25,6 +29,8 @@ import java.util.List;
  */
 class AssociatorWriter {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(AssociatorWriter.class);
+
     /**
      * Writes an Associator to a file, using the given uuid as filename. This is the fastest method.
      *
@@ -39,6 +45,44 @@ class AssociatorWriter {
         }
     }
 
+    /**
+     * Writes the reduced rules and the item dictionary to a binary rule file, using the given uuid as filename.
+     * The file can be memory mapped by the FrequentItemSetCalculator and queried in place, so loading it is almost
+     * instantaneous. See BinaryRuleFile for the layout.
+     *
+     * @param rules      The reduced rules to write, using integers for their items
+     * @param dictionary Converts the integers of the items back to their strings
+     * @param uuid       The unique identifier of the model, which becomes the file name
+     */
+    void toBinaryFile(List<FakeAssociationRule> rules, ItemDictionary dictionary, String uuid) {
+        RuleStore store = new RuleStore();
+        for (FakeAssociationRule rule : rules) {
+            int[] premise = toItemArray(rule.getPremise());
+            int[] consequence = toItemArray(rule.getConsequence());
+            store.addRule(premise, premise.length, consequence, consequence.length,
+                    rule.getPremiseSupport(), rule.getConsequenceSupport(), rule.getTotalSupport());
+        }
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < dictionary.size(); i++) {
+            items.add(dictionary.getString(i));
+        }
+        // the rules are stored sorted on their total support, so the mapped model can answer top k queries early
+        RuleStore sortedStore = store.sortedByTotalSupport();
+        try {
+            BinaryRuleFile.write(new File("/data/" + uuid + ".bin"), items, sortedStore, new RuleIndex(sortedStore));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private int[] toItemArray(List<Integer> items) {
+        int[] array = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            array[i] = items.get(i) == null ? RuleStore.UNKNOWN_ITEM : items.get(i);
+        }
+        return array;
+    }
+
     /**
      * Writes an Associator to a RDF file, using the given uuid as filename.
      * This is slower than a native file, but a RDF file can be used for other purposes.
@@ -126,75 +170,94 @@ class AssociatorWriter {
 
     /**
      * Writes an Associator to a triplestore, using the given uuid in the name of the "root" node. This is slower than writing it to a file.
-     * The rules are written in batches to make sure the query doesn't time out and to prevent memory problems.
+     * The statements are handed to a TripleStoreBulkWriter, which sends them in batches on several connections at once,
+     * so the query doesn't time out and the next batch is built while the previous ones are being written.
+     * The rules are named after the model and their position in the list, so no uuid has to be generated per rule.
+     * The amount of written triples and the time it took are added to the metadata. If a batch can not be written
+     * even after retrying it, the statements of the model that were already written are deleted again.
      *
      * @param rules    The rules to write to the triplestore
      * @param repo     The repository to write to
      * @param metadata The metadata of the creation of the rules, which are also written to the file.
      * @param uuid     The identifier, which is used in the name of the "root" node.
+     * @throws RepositoryException A batch of rules could not be written, even after retrying it
      */
-    void RDFtoTripleStore(List<StringFakeAssociationRule> rules, Repository repo, Metadata metadata, String uuid) {
+    void RDFtoTripleStore(List<StringFakeAssociationRule> rules, Repository repo, Metadata metadata, String uuid) throws RepositoryException {
 
-        Model model = new LinkedHashModel();
         ValueFactory factory = repo.getValueFactory();
         String ns = "http://mu.semte.ch/vocabularies/ext/weka-service/";
         String mu = "http://mu.semte.ch/vocabularies/core/";
 
-        IRI UUID = factory.createIRI(mu, "uuid");
-        IRI wekaService = factory.createIRI(ns, "wekaService/" + uuid);
-        model.add(wekaService, UUID, factory.createLiteral(uuid));
-
-        IRI query = factory.createIRI(ns, "query");
-        IRI runTime = factory.createIRI(ns, "runTime");
-        IRI algorithm = factory.createIRI(ns, "algorithm");
-        IRI totalTransactions = factory.createIRI(ns, "totalTransactions");
-        IRI options = factory.createIRI(ns, "options");
-
-        model.add(wekaService, query, factory.createLiteral(metadata.getQuery()));
-        model.add(wekaService, runTime, factory.createLiteral(metadata.getRunTime()));
-        model.add(wekaService, algorithm, factory.createLiteral(metadata.getAlgorithm()));
-        model.add(wekaService, totalTransactions, factory.createLiteral(metadata.getTotalRows()));
-        model.add(wekaService, options, factory.createLiteral(metadata.getOptions()));
-
         String location = System.getenv("GRAPH");
         IRI context = factory.createIRI(location);
-        RepositoryConnection conn = repo.getConnection();
-        conn.add(model, context);
+        TripleStoreBulkWriter writer = TripleStoreBulkWriter.fromEnvironment(repo, context);
+        writer.start();
+        try {
+            IRI UUID = factory.createIRI(mu, "uuid");
+            IRI wekaService = factory.createIRI(ns, "wekaService/" + uuid);
+            writer.add(factory.createStatement(wekaService, UUID, factory.createLiteral(uuid)));
 
-        IRI rule = factory.createIRI(ns, "rule");
-        IRI from = factory.createIRI(ns, "from");
-        IRI to = factory.createIRI(ns, "to");
-        IRI premiseSupport = factory.createIRI(ns, "premiseSupport");
-        IRI consequenceSupport = factory.createIRI(ns, "consequenceSupport");
-        IRI totalSupport = factory.createIRI(ns, "totalSupport");
+            IRI query = factory.createIRI(ns, "query");
+            IRI runTime = factory.createIRI(ns, "runTime");
+            IRI algorithm = factory.createIRI(ns, "algorithm");
+            IRI totalTransactions = factory.createIRI(ns, "totalTransactions");
+            IRI options = factory.createIRI(ns, "options");
 
+            writer.add(factory.createStatement(wekaService, query, factory.createLiteral(metadata.getQuery())));
+            writer.add(factory.createStatement(wekaService, runTime, factory.createLiteral(metadata.getRunTime())));
+            writer.add(factory.createStatement(wekaService, algorithm, factory.createLiteral(metadata.getAlgorithm())));
+            writer.add(factory.createStatement(wekaService, totalTransactions, factory.createLiteral(metadata.getTotalRows())));
+            writer.add(factory.createStatement(wekaService, options, factory.createLiteral(metadata.getOptions())));
 
-        Iterator<StringFakeAssociationRule> iterator = rules.iterator();
-        int rulesPerStep = 50;
-        for (int i = 0; i < Math.ceil(rules.size() / ((double) rulesPerStep)); i++) {
-            int j = 0;
-            Model ruleModel = new LinkedHashModel();
-            while (iterator.hasNext() && j < rulesPerStep) {
-                StringFakeAssociationRule currentRule = iterator.next();
-                com.eaio.uuid.UUID uuidRule = new com.eaio.uuid.UUID();
-                IRI ruleInstance = factory.createIRI(ns, "rules/" + uuidRule.toString());
-                ruleModel.add(wekaService, rule, ruleInstance);
-                ruleModel.add(ruleInstance, UUID, factory.createLiteral(uuidRule.toString()));
-                ruleModel.add(ruleInstance, RDF.TYPE, rule);
+            IRI rule = factory.createIRI(ns, "rule");
+            IRI from = factory.createIRI(ns, "from");
+            IRI to = factory.createIRI(ns, "to");
+            IRI premiseSupport = factory.createIRI(ns, "premiseSupport");
+            IRI consequenceSupport = factory.createIRI(ns, "consequenceSupport");
+            IRI totalSupport = factory.createIRI(ns, "totalSupport");
+
+            for (int i = 0; i < rules.size(); i++) {
+                StringFakeAssociationRule currentRule = rules.get(i);
+                String ruleId = uuid + "-" + i;
+                IRI ruleInstance = factory.createIRI(ns, "rules/" + ruleId);
+                writer.add(factory.createStatement(wekaService, rule, ruleInstance));
+                writer.add(factory.createStatement(ruleInstance, UUID, factory.createLiteral(ruleId)));
+                writer.add(factory.createStatement(ruleInstance, RDF.TYPE, rule));
 
                 for (String premise : currentRule.getPremise()) {
-                    ruleModel.add(ruleInstance, from, factory.createLiteral(premise));
+                    writer.add(factory.createStatement(ruleInstance, from, factory.createLiteral(premise)));
                 }
                 for (String consequence : currentRule.getConsequence()) {
-                    ruleModel.add(ruleInstance, to, factory.createLiteral(consequence));
+                    writer.add(factory.createStatement(ruleInstance, to, factory.createLiteral(consequence)));
                 }
-                ruleModel.add(ruleInstance, premiseSupport, factory.createLiteral(currentRule.getPremiseSupport()));
-                ruleModel.add(ruleInstance, consequenceSupport, factory.createLiteral(currentRule.getConsequenceSupport()));
-                ruleModel.add(ruleInstance, totalSupport, factory.createLiteral(currentRule.getTotalSupport()));
-                j += 1;
+                writer.add(factory.createStatement(ruleInstance, premiseSupport, factory.createLiteral(currentRule.getPremiseSupport())));
+                writer.add(factory.createStatement(ruleInstance, consequenceSupport, factory.createLiteral(currentRule.getConsequenceSupport())));
+                writer.add(factory.createStatement(ruleInstance, totalSupport, factory.createLiteral(currentRule.getTotalSupport())));
+            }
+        } finally {
+            try {
+                writer.finish();
+            } catch (RepositoryException e) {
+                // the batches that were written before the failure would leave a partial model behind
+                deleteFromTripleStore(repo, context, ns, uuid);
+                throw e;
             }
-            conn.add(ruleModel, context);
         }
-        conn.close();
+        metadata.setTripleStoreWrite(writer.getWriteTime(), writer.getWrittenStatements());
+    }
+
+    /**
+     * Deletes every statement of a model from the graph: the statements about the model itself and about its rules.
+     * Used when writing the model failed, the failure to delete it is only logged.
+     */
+    private void deleteFromTripleStore(Repository repo, IRI context, String ns, String uuid) {
+        String update = "DELETE { GRAPH <" + context + "> { ?s ?p ?o } }\n" +
+                "WHERE { GRAPH <" + context + "> { ?s ?p ?o .\n" +
+                "FILTER(?s = <" + ns + "wekaService/" + uuid + "> || STRSTARTS(STR(?s), \"" + ns + "rules/" + uuid + "-\")) } }";
+        try (RepositoryConnection conn = repo.getConnection()) {
+            conn.prepareUpdate(QueryLanguage.SPARQL, update).execute();
+        } catch (RDF4JException e) {
+            LOGGER.error("Could not delete the partially written model {} from the triplestore", uuid, e);
+        }
     }
 }
@@ -0,0 +1,162 @@
+package Associator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Reads and writes the "binary" storage method: the reduced, integer encoded rules, the rule index and the item
+ * dictionary in one flat file. The rules and the index are stored as the int columns of a RuleStore and a RuleIndex, so
+ * they can be memory mapped and queried in place instead of being deserialized. Since the file is only mapped read-only,
+ * several JVMs on the same host share the same pages.
+ * <p>
+ * Layout, all numbers are little endian ints:
+ * magic, version, rule count, item count, dictionary size in bytes,
+ * the dictionary (per item, in order of their integer: the length in bytes followed by the UTF-8 bytes), padding to 4 bytes,
+ * then per column of the RuleStore and then of the RuleIndex: the length in ints followed by the ints.
+ */
+class BinaryRuleFile {
+
+    private static final int MAGIC = 0x52344257;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5 * 4;
+    private static final int STORE_COLUMNS = 7;
+    private static final int INDEX_COLUMNS = 5;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    /**
+     * Writes the rules, their index and the dictionary to a binary rule file. The file is first written to a new temporary
+     * file next to the target and then moved in place, so readers never map a half written file.
+     *
+     * @param file  The file to write to
+     * @param items The items of the rules as strings, the position of an item is the integer it is stored as
+     * @param rules The rules to write
+     * @param index The index on the rules
+     * @throws IOException Could not write the file
+     */
+    static void write(File file, List<String> items, RuleStore rules, RuleIndex index) throws IOException {
+        // heap columns can be larger than the amount of rules they hold, after trimming the whole column is used
+        rules.trim();
+        File temporaryFile = File.createTempFile("." + file.getName() + "-", ".tmp", file.getAbsoluteFile().getParentFile());
+        try (RandomAccessFile output = new RandomAccessFile(temporaryFile, "rw")) {
+            output.setLength(0);
+            FileChannel channel = output.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[][] encodedItems = new byte[items.size()][];
+            int dictionaryBytes = 0;
+            for (int i = 0; i < items.size(); i++) {
+                encodedItems[i] = items.get(i).getBytes(StandardCharsets.UTF_8);
+                dictionaryBytes += 4 + encodedItems[i].length;
+            }
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(rules.size()).putInt(items.size()).putInt(dictionaryBytes);
+            for (byte[] item : encodedItems) {
+                buffer = ensureRemaining(channel, buffer, 4 + item.length);
+                buffer.putInt(item.length);
+                buffer.put(item);
+            }
+            for (int padding = 0; padding < paddingAfter(dictionaryBytes); padding++) {
+                buffer = ensureRemaining(channel, buffer, 1);
+                buffer.put((byte) 0);
+            }
+            for (IntBuffer column : rules.columns()) {
+                buffer = writeColumn(channel, buffer, column);
+            }
+            for (IntBuffer column : index.columns()) {
+                buffer = writeColumn(channel, buffer, column);
+            }
+            flush(channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw e;
+        }
+        try {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw e;
+        }
+    }
+
+    private static ByteBuffer writeColumn(FileChannel channel, ByteBuffer buffer, IntBuffer column) throws IOException {
+        buffer = ensureRemaining(channel, buffer, 4);
+        buffer.putInt(column.capacity());
+        for (int i = 0; i < column.capacity(); i++) {
+            buffer = ensureRemaining(channel, buffer, 4);
+            buffer.putInt(column.get(i));
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer ensureRemaining(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed)
+            return buffer;
+        flush(channel, buffer);
+        if (buffer.capacity() >= needed)
+            return buffer;
+        return ByteBuffer.allocate(needed).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static int paddingAfter(int dictionaryBytes) {
+        return (4 - dictionaryBytes % 4) % 4;
+    }
+
+    /**
+     * Maps a binary rule file into memory. Only the dictionary is read into the hashmaps, the rules and the index are
+     * queried straight from the mapped file, so loading takes hardly any time.
+     *
+     * @param file The file to map
+     * @return The model of the file
+     * @throws IOException Could not read the file, or it is not a binary rule file of a supported version
+     */
+    static AssociatorModel read(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC)
+                throw new IOException(file + " is not a binary rule file");
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException(file + " has version " + version + ", only version " + VERSION + " is supported");
+            int ruleCount = header.getInt();
+            int itemCount = header.getInt();
+            int dictionaryBytes = header.getInt();
+
+            ByteBuffer dictionary = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, dictionaryBytes).order(ByteOrder.LITTLE_ENDIAN);
+            ItemDictionary itemDictionary = new ItemDictionary();
+            for (int i = 0; i < itemCount; i++) {
+                byte[] item = new byte[dictionary.getInt()];
+                dictionary.get(item);
+                itemDictionary.add(new String(item, StandardCharsets.UTF_8));
+            }
+
+            long position = HEADER_BYTES + dictionaryBytes + paddingAfter(dictionaryBytes);
+            IntBuffer[] columns = new IntBuffer[STORE_COLUMNS + INDEX_COLUMNS];
+            for (int i = 0; i < columns.length; i++) {
+                ByteBuffer length = channel.map(FileChannel.MapMode.READ_ONLY, position, 4).order(ByteOrder.LITTLE_ENDIAN);
+                long bytes = 4L * length.getInt();
+                columns[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + 4, bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                position += 4 + bytes;
+            }
+            RuleStore rules = new RuleStore(ruleCount, columns[0], columns[1], columns[2], columns[3], columns[4], columns[5], columns[6]);
+            RuleIndex index = new RuleIndex(columns[7], columns[8], columns[9], columns[10], columns[11]);
+            return new AssociatorModel(rules, index, itemDictionary);
+        }
+    }
+}
@@ -1,22 +1,41 @@
 package Associator;
 
 import Main.Algorithm;
+import Main.DatasetSnapshot;
+
+import java.util.List;
 
 /**
  * The expected json format for a request to build a model. (Can be either an Associator or a Classifier, might be split in the future)
- * Contains the algorithm with which to build a model, the options of the algorithm to use and the method of storage
+ * Contains the algorithm with which to build a model, the options of the algorithm to use and the method of storage.
+ * If async is true the model is built in the background and the request only returns the id of the build job.
+ * If a baseIdentifier is given, the model is not built from all data but from the transactions of that earlier model,
+ * with the addedTransactions and removedTransactions applied, and with the rows of the delta queries if queryDelta is true.
+ * The transactions of an associator model are only kept, so it can be such a base model, if keepTransactions is true.
+ * The snapshot is "reuse" or "refresh" to build from a local snapshot of the data instead of the triplestore, see DatasetSnapshot.
+ * If folds is at least 2, a classifier is also cross-validated with that amount of folds, 0 skips the evaluation.
+ * If outOfCore is true, the data of a classifier is kept in a memory-mapped file instead of on the heap, see MappedRowStore.
  */
 public class BuildModelPayload {
 
     private String[] options;
     private Algorithm algorithm;
     private String method;
+    private boolean async;
+    private String baseIdentifier;
+    private List<String> addedTransactions;
+    private List<String> removedTransactions;
+    private boolean queryDelta;
+    private boolean keepTransactions;
+    private String snapshot;
+    private int folds;
+    private boolean outOfCore;
 
     public String[] getOptions() {
         return options;
     }
 
-    private void setOptions(String[] options) {
+    public void setOptions(String[] options) {
         this.options = options;
     }
 
@@ -36,12 +55,103 @@ public class BuildModelPayload {
         this.method = method;
     }
 
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public String getBaseIdentifier() {
+        return baseIdentifier;
+    }
+
+    public void setBaseIdentifier(String baseIdentifier) {
+        this.baseIdentifier = baseIdentifier;
+    }
+
+    public List<String> getAddedTransactions() {
+        return addedTransactions;
+    }
+
+    public void setAddedTransactions(List<String> addedTransactions) {
+        this.addedTransactions = addedTransactions;
+    }
+
+    public List<String> getRemovedTransactions() {
+        return removedTransactions;
+    }
+
+    public void setRemovedTransactions(List<String> removedTransactions) {
+        this.removedTransactions = removedTransactions;
+    }
+
+    public boolean isQueryDelta() {
+        return queryDelta;
+    }
+
+    public void setQueryDelta(boolean queryDelta) {
+        this.queryDelta = queryDelta;
+    }
+
+    public boolean isKeepTransactions() {
+        return keepTransactions;
+    }
+
+    public void setKeepTransactions(boolean keepTransactions) {
+        this.keepTransactions = keepTransactions;
+    }
+
+    public String getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(String snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public int getFolds() {
+        return folds;
+    }
+
+    public void setFolds(int folds) {
+        this.folds = folds;
+    }
+
+    public boolean isOutOfCore() {
+        return outOfCore;
+    }
+
+    public void setOutOfCore(boolean outOfCore) {
+        this.outOfCore = outOfCore;
+    }
+
+    /**
+     * @return True if the model is built by updating the transactions of an earlier model
+     */
+    public boolean isIncremental() {
+        return baseIdentifier != null;
+    }
+
     /**
      * Checks whether the given payload is valid.
      *
      * @return true if valid, false if not valid
      */
     public boolean isValid() {
+        if (!isIncremental() && (addedTransactions != null || removedTransactions != null || queryDelta))
+            return false;
+        if (isIncremental() && !baseIdentifier.matches("[0-9a-zA-Z-]+"))
+            return false;
+        if (keepTransactions && algorithm != null && algorithm.isClassifier())
+            return false;
+        if (!DatasetSnapshot.isValidMode(snapshot) || (isIncremental() && snapshot != null))
+            return false;
+        if (folds != 0 && (folds < 2 || algorithm == null || !algorithm.isClassifier()))
+            return false;
+        if (outOfCore && (algorithm == null || !algorithm.isClassifier()))
+            return false;
         Algorithm[] values = Algorithm.values();
         for (Algorithm value : values) {
             if (value == this.algorithm)
@@ -1,19 +1,26 @@
 package Associator;
 
-import org.eclipse.rdf4j.model.*;
+import Main.Metrics;
 import org.eclipse.rdf4j.query.*;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
-import org.eclipse.rdf4j.repository.RepositoryResult;
-import org.eclipse.rdf4j.repository.sail.SailRepository;
 import org.eclipse.rdf4j.rio.RDFFormat;
-import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
 import weka.associations.AbstractAssociator;
 import weka.associations.AssociationRule;
 import weka.associations.Item;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class loads a list of AssociationRules from a file or a triplestore. It can then utilize those rules
@@ -22,23 +29,28 @@ import java.util.*;
 public class FrequentItemSetCalculator {
 
     /**
-     * The loaded rules. FakeAssociationRules are used to save memory and to facilitate calculating the frequent items.
-     * They utilize integers to store the premise and consequence instead of strings.
+     * The amount of attribute lists per parallel task of a batch, large enough that scheduling a task costs little
+     * compared to calculating it.
      */
-    private List<FakeAssociationRule> loadedRules = new ArrayList<>();
+    private static final int BATCH_CHUNK_SIZE = 64;
     /**
-     * Contains an UUID that either specifies the location of the rules in the triplestore or the file to load the rules from.
-     * Used to check whether the requested model is already loaded into memory
+     * The amount of related rules per page when the payload does not give a page size.
      */
-    private String identifier = null;
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+
     /**
-     * This HashMap is used to convert AssocationRules into FakeAssociationRules to save memory and to facilitate calculating the frequent items.
+     * The loaded model: the rules, the rule index and the dictionary that converts the items between strings and integers.
+     * Rules are stored in a RuleStore to save memory and to facilitate calculating the frequent items. It utilizes
+     * integers, packed into shared int arrays, to store the premises and consequences instead of strings.
+     * A load builds a complete new snapshot and then swaps it in, so requests never see a half loaded model and never
+     * have to wait for a load. Each request reads the reference once and works on that snapshot only.
      */
-    private HashMap<String, Integer> stringToIntegerHash = new HashMap<>();
+    private final AtomicReference<AssociatorModel> loadedModel = new AtomicReference<>(AssociatorModel.empty());
     /**
-     * This HashMap is used to convert the found frequent items back into strings that represent their UUID
+     * Contains an UUID that either specifies the location of the rules in the triplestore or the file to load the rules from.
+     * Used to check whether the requested model is already loaded into memory
      */
-    private HashMap<Integer, String> integerToStringHash = new HashMap<>();
+    private volatile String identifier = null;
 
     public String getIdentifier() {
         return identifier;
@@ -50,62 +62,131 @@ public class FrequentItemSetCalculator {
 
     /**
      * Returns an string which describes the amount of rules of each length that are currently loaded into memory.
-     * The first element is the amount of rules of length 1, and so on.
+     * The first element is the amount of rules of length 1, and so on. It is followed by the memory used per rule
+     * and the size of the rule index.
      */
     public String analyse() {
+        AssociatorModel current = loadedModel.get();
+        RuleStore loadedRules = current.getRules();
+        RuleIndex ruleIndex = current.getRuleIndex();
         List<Integer> lengthOfRules = new ArrayList<>(Collections.nCopies(60, 0));
-        for (FakeAssociationRule rule : loadedRules) {
-            int premise = rule.getPremise().size() + rule.getConsequence().size();
+        for (int rule = 0; rule < loadedRules.size(); rule++) {
+            int premise = loadedRules.ruleLength(rule);
             lengthOfRules.set(premise - 1, lengthOfRules.get(premise - 1) + 1);
         }
-        return lengthOfRules.toString();
+        return lengthOfRules.toString() + " rules: " + loadedRules.size() + ", ~"
+                + String.format(Locale.ROOT, "%.1f", loadedRules.bytesPerRule()) + " bytes per rule"
+                + (loadedRules.isMapped() ? " (mapped)" : "")
+                + " index: " + ruleIndex.getTotalPostings() + " postings over "
+                + ruleIndex.getIndexedItems() + " items, ~" + ruleIndex.estimateMemory() + " bytes";
     }
 
     /**
-     * Get all rules that contain one of the attributes given in the payload.
+     * @return An estimate of the memory used by the loaded rules, the rule indices and the dictionary in bytes
+     */
+    public long estimateMemory() {
+        AssociatorModel current = loadedModel.get();
+        return current.getRules().estimateMemory() + current.getRuleIndex().estimateMemory() + current.estimateItemRuleIndexMemory()
+                + current.getDictionary().estimateMemory();
+    }
+
+    /**
+     * Gets a page of the rules that contain one of the attributes given in the payload, in their premise or in their
+     * consequence. The index from items to rules finds them without going over every loaded rule. The rules are handed
+     * to the consumer one by one, with their items converted back to strings, so a page is never kept in memory.
+     * A page ends after the page size of the payload, or DEFAULT_PAGE_SIZE rules, and the next page starts at the
+     * returned cursor. The cursor is the index of a rule, so it only holds for the model that is loaded right now.
      *
-     * @param payload Contains a list of attributes
-     * @return All rules that contain one of the given attributes, as strings
+     * @param payload  Contains a list of attributes, and optionally the cursor and the page size
+     * @param consumer Receives the related rules of the page, in the order of the loaded rules
+     * @return The cursor of the next page, or null if this is the last page
+     * @throws IOException The consumer could not write a rule
      */
-    public List<String> getAllRelatedRules(UseAssociatorPayload payload) {
-
-        List<String> attributes = payload.getattributes();
-        List<Integer> attributesAsInt = convertStringToInteger(attributes);
-        List<String> relatedRules = new ArrayList<>();
-        for (FakeAssociationRule loadedRule : loadedRules) {
-            for (Integer testRule : attributesAsInt) {
-                if (loadedRule.getPremise().contains(testRule) || loadedRule.getConsequence().contains(testRule)) {
-                    relatedRules.add(loadedRule.toString());
-                    break;
+    public Integer getRelatedRules(UseAssociatorPayload payload, RuleConsumer consumer) throws IOException {
+        AssociatorModel current = loadedModel.get();
+        RuleStore loadedRules = current.getRules();
+        ItemDictionary dictionary = current.getDictionary();
+        int[] attributesAsInt = convertStringToInteger(payload.getattributes(), dictionary);
+        int cursor = payload.getCursor() == null ? 0 : payload.getCursor();
+        int pageSize = payload.getPageSize() == null ? DEFAULT_PAGE_SIZE : payload.getPageSize();
+        int[] matched = {0};
+        Integer[] next = {null};
+        int scanned;
+        try {
+            scanned = current.getItemRuleIndex().visitRelatedRules(attributesAsInt, cursor, rule -> {
+                if (matched[0] == pageSize) {
+                    next[0] = rule;
+                    return false;
                 }
-            }
+                matched[0] += 1;
+                try {
+                    consumer.accept(toStringRule(loadedRules, rule, dictionary));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return relatedRules;
+        Metrics.RULES_SCANNED.observe(scanned, "related-rules");
+        Metrics.RULES_MATCHED.observe(matched[0], "related-rules");
+        return next[0];
     }
 
     /**
-     * Loads the model into two global HashMaps and a global list of FakeAssociationRules. Can load model either from
-     * a file or from a triplestore, and can load model either from the APriori algorithm or the FPGrowth algorithm.
+     * Receives the related rules of a page.
+     */
+    public interface RuleConsumer {
+        void accept(StringFakeAssociationRule rule) throws IOException;
+    }
+
+    private static StringFakeAssociationRule toStringRule(RuleStore rules, int rule, ItemDictionary dictionary) {
+        List<String> premise = new ArrayList<>(rules.premiseEnd(rule) - rules.premiseStart(rule));
+        for (int position = rules.premiseStart(rule); position < rules.premiseEnd(rule); position++) {
+            premise.add(dictionary.getString(rules.premiseItem(position)));
+        }
+        List<String> consequence = new ArrayList<>(rules.consequenceEnd(rule) - rules.consequenceStart(rule));
+        for (int position = rules.consequenceStart(rule); position < rules.consequenceEnd(rule); position++) {
+            consequence.add(dictionary.getString(rules.consequenceItem(position)));
+        }
+        return new StringFakeAssociationRule(premise, consequence, rules.getPremiseSupport(rule),
+                rules.getConsequenceSupport(rule), rules.getTotalSupport(rule));
+    }
+
+    /**
+     * Loads the model into an ItemDictionary and a RuleStore, which together form a new snapshot that replaces the loaded
+     * model once it is complete. Can load model either from a file or from a triplestore, and can load model either
+     * from the APriori algorithm or the FPGrowth algorithm. If the model could not be loaded the previous snapshot is kept.
      *
      * @param repo    The repository to load the rules from, if they are loaded from the triplestore
      * @param payload Is either a FromTripleStoreInputPayload if model is loaded from triplestore or a FromFileInputPayload if model is loaded from file.
      */
     public void loadModel(Repository repo, UseAssociatorPayload payload) {
 
+        long start = Metrics.start();
+        AssociatorModel newModel = null;
         switch (payload.getMethod()) {
             case ("triplestore"):
-                loadModelFromTripleStore(repo, payload);
+                newModel = loadModelFromTripleStore(repo, payload);
                 break;
             case ("native"):
                 try {
-                    loadModelFromNative(payload);
+                    newModel = loadModelFromNative(payload);
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
                 break;
             case ("RDFFile"):
                 try {
-                    loadModelFromRDFFile(payload);
+                    newModel = loadModelFromRDFFile(payload);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                break;
+            case ("binary"):
+                try {
+                    newModel = loadModelFromBinaryFile(payload);
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
@@ -113,101 +194,96 @@ public class FrequentItemSetCalculator {
             default:
                 throw new IllegalArgumentException();
         }
+        if (newModel != null) {
+            loadedModel.set(newModel);
+            Metrics.MODEL_LOAD_DURATION.observeSince(start, "associator", payload.getMethod());
+        }
     }
 
     /**
-     * Loads a model from a native .model file. The hashmaps are created in the convertItemToInteger function
+     * @return The amount of rules of the loaded model
+     */
+    public int getRuleCount() {
+        return loadedModel.get().getRules().size();
+    }
+
+    /**
+     * Loads a model from a native .model file. The dictionary is filled in the convertItemToInteger function
      * @param payload
      * Contains the identifier by which to find the right file
+     * @return
+     * The loaded model
      * @throws Exception
      * Could not read the file
      */
-    private void loadModelFromNative(UseAssociatorPayload payload) throws Exception {
+    private AssociatorModel loadModelFromNative(UseAssociatorPayload payload) throws Exception {
         AssociatorBuilder builder = new AssociatorBuilder();
         List<AssociationRule> rules = builder.getRules((AbstractAssociator) weka.core.SerializationHelper.read("/data/" + payload.getIdentifier() + ".model"));
-        List<FakeAssociationRule> newRules = new ArrayList<>();
+        ItemDictionary dictionary = new ItemDictionary();
+        RuleStore newRules = new RuleStore();
         for (AssociationRule rule : rules) {
-            newRules.add(new FakeAssociationRule(
-                    convertItemToInteger(rule.getPremise()),
-                    convertItemToInteger(rule.getConsequence()), rule.getPremiseSupport(), rule.getConsequenceSupport(), rule.getTotalSupport()));
+            int[] premise = convertItemToInteger(rule.getPremise(), dictionary);
+            int[] consequence = convertItemToInteger(rule.getConsequence(), dictionary);
+            newRules.addRule(premise, premise.length, consequence, consequence.length,
+                    rule.getPremiseSupport(), rule.getConsequenceSupport(), rule.getTotalSupport());
         }
-        loadedRules = newRules;
+        return AssociatorModel.of(newRules, dictionary);
+    }
+
+    /**
+     * Loads a model from a binary rule file. This is the fastest method: the rules and their index are memory mapped
+     * and queried in place, only the dictionary is read into memory. The mapped file can be shared by several processes.
+     * @param payload
+     * Contains the identifier by which to find the right file
+     * @return
+     * The loaded model
+     * @throws Exception
+     * Could not read the file
+     */
+    private AssociatorModel loadModelFromBinaryFile(UseAssociatorPayload payload) throws Exception {
+        return BinaryRuleFile.read(new File("/data/" + payload.getIdentifier() + ".bin"));
     }
 
     /**
-     * Converts a Weka Item to an integer. Also adds the string/integer to a int->string
-     * and string->int hashmap, which is used to conserve memory.
+     * Converts Weka Items to integers. Also adds the items that are new to the dictionary of the model that is being loaded.
      * @param list
      * The collection of items to change to integers
+     * @param dictionary
+     * The dictionary of the model that is being loaded
      * @return
-     * A list of integers, the integers can be converted into strings by the hashmaps.
+     * An array of integers, the integers can be converted into strings by the dictionary.
      */
-    private List<Integer> convertItemToInteger(Collection<Item> list) {
-        List<Integer> convertedList = new ArrayList<>();
+    private int[] convertItemToInteger(Collection<Item> list, ItemDictionary dictionary) {
+        int[] convertedList = new int[list.size()];
+        int i = 0;
         for (Item item : list) {
-            String string = item.toString().split("=")[0];
-            if (stringToIntegerHash.containsKey(string))
-                convertedList.add(stringToIntegerHash.get(string));
-            else {
-                int size = stringToIntegerHash.size();
-                stringToIntegerHash.put(string, size);
-                integerToStringHash.put(size, string);
-                convertedList.add(size);
-            }
+            convertedList[i] = dictionary.intern(item.toString().split("=")[0]);
+            i += 1;
         }
         return convertedList;
     }
 
     /**
      * Loads a model from a .RDF file. This is slower than loading from a native file and faster than loading from a triplestore.
-     * It first loads the file into memory and uses other methods to extract the rules and hashmaps.
+     * The file is parsed in a single pass: the dictionary and the rules are built from the statements while they are
+     * being read, without copying the file into a repository first.
      *
      * @param payload
      * Contains the identifier of the rdf file.
+     * @return
+     * The loaded model
      * @throws Exception
      * Could not read the rdf file
      */
-    private void loadModelFromRDFFile(UseAssociatorPayload payload) throws Exception {
-        File dataDir = new File("/data/" + payload.getIdentifier() + ".rdf");
-        Repository repo = new SailRepository(new MemoryStore());
-        repo.initialize();
-        ValueFactory factory = repo.getValueFactory();
-
-        // There might be a better way to do this
-        RepositoryConnection con = repo.getConnection();
-        con.add(dataDir, "", RDFFormat.TURTLE);
-        RepositoryResult<Statement> statements = con.getStatements(null, null, null);
-        Model model = QueryResults.asModel(statements);
-
-        String ns = "http://mu.semte.ch/vocabularies/ext/weka-service/";
-        IRI from = factory.createIRI(ns, "from");
-        IRI to = factory.createIRI(ns, "to");
-
-        attributesToHash(model, from, false);
-        attributesToHash(model, to, true);
-        loadRulesFromRDF(payload, repo);
-    }
-
-    /**
-     * Builds the hashmaps from the model (which is stored in memory)
-     * @param model
-     * The model, stored in memory
-     * @param filter
-     * The IRI on which to filter to extract the right attributes
-     * @param checkIfContains
-     * false if this is the first time the hashmaps are build, true if this is an expansion of the hashmaps
-     */
-    private void attributesToHash(Model model, IRI filter, boolean checkIfContains) {
-        Iterator<Value> iterator = model.filter(null, filter, null).objects().iterator();
-        int i = checkIfContains ? stringToIntegerHash.size() : 0;
-        while (iterator.hasNext()) {
-            String nextattribute = iterator.next().stringValue();
-            if (!checkIfContains || !stringToIntegerHash.containsKey(nextattribute)) {
-                stringToIntegerHash.put(nextattribute, i);
-                integerToStringHash.put(i, nextattribute);
-                i += 1;
-            }
+    private AssociatorModel loadModelFromRDFFile(UseAssociatorPayload payload) throws Exception {
+        File dataFile = new File("/data/" + payload.getIdentifier() + ".rdf");
+        RuleFileHandler handler = new RuleFileHandler(payload.getIdentifier());
+        RDFParser parser = Rio.createParser(RDFFormat.TURTLE);
+        parser.setRDFHandler(handler);
+        try (InputStream input = new BufferedInputStream(new FileInputStream(dataFile))) {
+            parser.parse(input, "");
         }
+        return handler.getModel();
     }
 
     /**
@@ -216,23 +292,28 @@ public class FrequentItemSetCalculator {
      * The repository where the triplestore is located
      * @param payload
      * Contains the identifier of the rules in the triplestore
+     * @return
+     * The loaded model, or null if the rules could not be loaded
      */
-    private void loadModelFromTripleStore(Repository repo, UseAssociatorPayload payload) {
-        loadHashMapsFromTripleStore(repo);
-        loadRulesFromRDF(payload, repo);
+    private AssociatorModel loadModelFromTripleStore(Repository repo, UseAssociatorPayload payload) {
+        List<String> attributesAsStrings = loadAttributesFromTripleStore(repo);
+        ItemDictionary dictionary = ItemDictionary.of(attributesAsStrings);
+        RuleStore rules = loadRulesFromRDF(payload, repo, dictionary);
+        return rules == null ? null : AssociatorModel.of(rules, dictionary);
     }
 
     /**
-     * Builds the hashmaps by quering all the attributes from the triplestore and going over them
+     * Queries all the attributes from the triplestore, from which the dictionary is built
      * @param repo
      * The repository where the triplestore is located
+     * @return
+     * The attributes as strings
      */
-    private void loadHashMapsFromTripleStore(Repository repo) {
+    private List<String> loadAttributesFromTripleStore(Repository repo) {
         RepositoryConnection conn = repo.getConnection();
         List<String> attributesAsStrings = attributesToStrings(getAttributes(conn));
-        stringToIntegerHash = createStringToIntegerHash(attributesAsStrings);
-        integerToStringHash = createIntegerToStringHash(attributesAsStrings);
         conn.close();
+        return attributesAsStrings;
     }
 
     /**
@@ -241,8 +322,12 @@ public class FrequentItemSetCalculator {
      * Contains the identifier of the rules
      * @param repo
      * The repository from which to load the rules, can be either a triplestore or a rdf file
+     * @param dictionary
+     * The dictionary of the model that is being loaded
+     * @return
+     * The loaded rules, or null if they could not be loaded
      */
-    private void loadRulesFromRDF(UseAssociatorPayload payload, Repository repo) {
+    private RuleStore loadRulesFromRDF(UseAssociatorPayload payload, Repository repo, ItemDictionary dictionary) {
         RepositoryConnection conn = repo.getConnection();
         String runUuid = payload.getIdentifier();
         String queryString = "prefix ns: <http://mu.semte.ch/vocabularies/ext/weka-service/>\n" +
@@ -257,7 +342,7 @@ public class FrequentItemSetCalculator {
                 "?o ns:totalSupport ?totsup }\n" +
                 "GROUP BY ?o ?mettype ?presup ?consup ?totsup";
         TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, queryString);
-        List<FakeAssociationRule> rules = new ArrayList<>();
+        RuleStore rules = new RuleStore();
         try {
             TupleQueryResult result = tupleQuery.evaluate();
             while (result.hasNext()) {
@@ -267,28 +352,18 @@ public class FrequentItemSetCalculator {
                 String presup = bindingSet.getValue("presup").stringValue();
                 String consup = bindingSet.getValue("consup").stringValue();
                 String totsup = bindingSet.getValue("totsup").stringValue();
-                String[] fromList = from.split(",");
-                String[] toList = to.split(",");
-                List<Integer> premiseAsIntegers = new ArrayList<>();
-                for (String premise : fromList) {
-                    Integer convertedValue = stringToIntegerHash.get(premise);
-                    premiseAsIntegers.add(convertedValue);
-                }
-                List<Integer> consequenceAsIntegers = new ArrayList<>();
-                for (String consequence : toList) {
-                    Integer convertedValue = stringToIntegerHash.get(consequence);
-                    consequenceAsIntegers.add(convertedValue);
-                }
-                FakeAssociationRule newRule = new FakeAssociationRule(premiseAsIntegers, consequenceAsIntegers,
+                int[] premiseAsIntegers = convertStringToInteger(Arrays.asList(from.split(",")), dictionary);
+                int[] consequenceAsIntegers = convertStringToInteger(Arrays.asList(to.split(",")), dictionary);
+                rules.addRule(premiseAsIntegers, premiseAsIntegers.length, consequenceAsIntegers, consequenceAsIntegers.length,
                         Integer.valueOf(presup), Integer.valueOf(consup), Integer.valueOf(totsup));
-                rules.add(newRule);
             }
             result.close();
             conn.close();
-            loadedRules = rules;
+            return rules;
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return null;
     }
 
     /**
@@ -315,56 +390,144 @@ public class FrequentItemSetCalculator {
         return strings;
     }
 
-    private HashMap<String, Integer> createStringToIntegerHash(List<String> attributes) {
-        HashMap<String, Integer> someTable = new HashMap<>();
-        for (int i = 0; i < attributes.size(); i++) {
-            someTable.put(attributes.get(i), i);
-        }
-        return someTable;
-    }
-
-    private HashMap<Integer, String> createIntegerToStringHash(List<String> attributes) {
-        HashMap<Integer, String> someTable = new HashMap<>();
-        for (int i = 0; i < attributes.size(); i++) {
-            someTable.put(i, attributes.get(i));
-        }
-        return someTable;
-    }
-
     /**
      * Finds all frequent items of a given list of attributes. The attributes are first converted to
      * ints to save memory and since comparision of Integers is much faster.
-     * For each rule, which is loaded in memory, it is checked if the given list of attributes contains the premise.
-     * If yes all the consequences that are not yet contained in the resulting list are added to it.
+     * The rule index is used to find the rules of which the given list of attributes contains the premise, without
+     * going over every loaded rule. For those rules, in the order they were loaded, all the consequences that are not
+     * contained in the given attributes are added to the resulting list.
      * Finally the list is sorted, duplicates are removed and it is returned.
+     * When the payload has a limit and the rules are sorted on their total support, the matching rules are already
+     * visited in the order of the result, so the search stops as soon as the limit is reached, see getTopFrequentItems.
      * @param payload
-     * Contains the attributes for which to calculate the frequent items.
+     * Contains the attributes for which to calculate the frequent items, and optionally the maximum amount to return.
      * @return
      * The list of frequent items, sorted on confidence
      */
     public List<FrequentItem> getFrequentItems(UseAssociatorPayload payload) {
+        return getFrequentItems(loadedModel.get(), payload.getattributes(), payload.getLimit());
+    }
+
+    /**
+     * Finds the frequent items of many lists of attributes, see getFrequentItems for a single list. All lists are
+     * calculated on the same snapshot of the model, in chunks that run in parallel on the common fork join pool.
+     * The results are handed to the consumer in the order of the lists, each chunk as soon as it and all chunks before
+     * it are done, so the consumer can stream them while the rest is still being calculated. Only a limited amount of
+     * chunks is calculated ahead of the consumer, so a slow consumer does not make the finished results pile up.
+     * @param attributeSets
+     * The lists of attributes for which to calculate the frequent items
+     * @param limit
+     * The maximum amount of frequent items per list, or null for all of them
+     * @param consumer
+     * Receives the frequent items of each list, in order
+     * @throws IOException
+     * The consumer could not write a result, the chunks that were not handed over yet are cancelled
+     */
+    public void getFrequentItems(List<List<String>> attributeSets, Integer limit, BatchConsumer consumer) throws IOException {
+        AssociatorModel current = loadedModel.get();
+        int chunkCount = (attributeSets.size() + BATCH_CHUNK_SIZE - 1) / BATCH_CHUNK_SIZE;
+        int window = 4 * ForkJoinPool.getCommonPoolParallelism();
+        ArrayDeque<CompletableFuture<List<List<FrequentItem>>>> running = new ArrayDeque<>();
+        int submitted = 0;
+        try {
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                while (submitted < chunkCount && running.size() < window) {
+                    List<List<String>> chunkAttributes = attributeSets.subList(submitted * BATCH_CHUNK_SIZE,
+                            Math.min(attributeSets.size(), (submitted + 1) * BATCH_CHUNK_SIZE));
+                    running.add(CompletableFuture.supplyAsync(() -> {
+                        List<List<FrequentItem>> results = new ArrayList<>(chunkAttributes.size());
+                        for (List<String> attributes : chunkAttributes) {
+                            results.add(getFrequentItems(current, attributes, limit));
+                        }
+                        return results;
+                    }));
+                    submitted += 1;
+                }
+                for (List<FrequentItem> frequentItems : running.poll().join()) {
+                    consumer.accept(frequentItems);
+                }
+            }
+        } finally {
+            for (CompletableFuture<List<List<FrequentItem>>> future : running) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Receives the results of a batch of frequent item calculations.
+     */
+    public interface BatchConsumer {
+        void accept(List<FrequentItem> frequentItems) throws IOException;
+    }
+
+    List<FrequentItem> getFrequentItems(AssociatorModel current, List<String> attributes, Integer limit) {
+        RuleStore loadedRules = current.getRules();
+        ItemDictionary dictionary = current.getDictionary();
+        int[] attributesAsInt = convertStringToInteger(attributes, dictionary);
+        Set<Integer> attributeSet = new HashSet<>();
+        for (int attribute : attributesAsInt) {
+            attributeSet.add(attribute);
+        }
+        if (limit != null && current.isSortedBySupport())
+            return getTopFrequentItems(current, attributesAsInt, attributeSet, limit);
 
-        List<String> attributes = payload.getattributes();
-        List<Integer> attributesAsInt = convertStringToInteger(attributes);
         List<FrequentItem> scores = new ArrayList<>();
-        for (FakeAssociationRule rule : loadedRules) {
-            if (attributesAsInt.containsAll(rule.getPremise())) {
-                for (Integer consequence : rule.getConsequence()) {
-                    if (!attributesAsInt.contains(consequence)) {
-                        scores.add(new FrequentItem(rule.getTotalSupport(), integerToStringHash.get(consequence)));
-                    }
+        int[] matchingRules = current.getRuleIndex().matchingRules(attributesAsInt);
+        Metrics.RULES_SCANNED.observe(current.getRuleIndex().postingCount(attributesAsInt), "frequent-items");
+        Metrics.RULES_MATCHED.observe(matchingRules.length, "frequent-items");
+        for (int rule : matchingRules) {
+            for (int position = loadedRules.consequenceStart(rule); position < loadedRules.consequenceEnd(rule); position++) {
+                int consequence = loadedRules.consequenceItem(position);
+                if (!attributeSet.contains(consequence)) {
+                    scores.add(new FrequentItem(loadedRules.getTotalSupport(rule), dictionary.getString(consequence)));
                 }
             }
         }
         Collections.sort(scores);
-        return new ArrayList<>(new LinkedHashSet<>(scores));
+        List<FrequentItem> frequentItems = new ArrayList<>(new LinkedHashSet<>(scores));
+        if (limit != null && frequentItems.size() > limit)
+            return new ArrayList<>(frequentItems.subList(0, limit));
+        return frequentItems;
+    }
+
+    /**
+     * Finds the limit best frequent items on a model of which the rules are sorted from the highest to the lowest total
+     * support. The matching rules are visited in ascending order, which is then also the order of their scores, with
+     * ties in the order they were loaded, exactly like the stable sort of getFrequentItems leaves them. The first
+     * occurrence of each item is kept, so once limit distinct items are found no later rule can change the result and
+     * the rest of the posting lists is skipped. No sort and no heap of candidates is needed.
+     */
+    private List<FrequentItem> getTopFrequentItems(AssociatorModel current, int[] attributesAsInt, Set<Integer> attributeSet, int limit) {
+        RuleStore loadedRules = current.getRules();
+        ItemDictionary dictionary = current.getDictionary();
+        LinkedHashSet<FrequentItem> frequentItems = new LinkedHashSet<>();
+        int[] matched = {0};
+        int scanned = current.getRuleIndex().visitMatchingRules(attributesAsInt, rule -> {
+            matched[0] += 1;
+            for (int position = loadedRules.consequenceStart(rule); position < loadedRules.consequenceEnd(rule); position++) {
+                int consequence = loadedRules.consequenceItem(position);
+                if (!attributeSet.contains(consequence)) {
+                    frequentItems.add(new FrequentItem(loadedRules.getTotalSupport(rule), dictionary.getString(consequence)));
+                    if (frequentItems.size() == limit)
+                        return false;
+                }
+            }
+            return true;
+        });
+        Metrics.RULES_SCANNED.observe(scanned, "frequent-items");
+        Metrics.RULES_MATCHED.observe(matched[0], "frequent-items");
+        return new ArrayList<>(frequentItems);
     }
 
 
-    private List<Integer> convertStringToInteger(List<String> attributes) {
-        List<Integer> attributesAsInteger = new ArrayList<>();
-        for (String attribute : attributes) {
-            attributesAsInteger.add(stringToIntegerHash.get(attribute));
+    /**
+     * Converts strings to their integers using the dictionary. Strings that are not in the dictionary become RuleStore.UNKNOWN_ITEM.
+     */
+    private int[] convertStringToInteger(List<String> attributes, ItemDictionary dictionary) {
+        int[] attributesAsInteger = new int[attributes.size()];
+        for (int i = 0; i < attributes.size(); i++) {
+            attributesAsInteger[i] = dictionary.getInteger(attributes.get(i));
         }
         return attributesAsInteger;
     }
@@ -0,0 +1,194 @@
+package Associator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Converts items between their strings and the integers they are stored as, the integer of an item is its position in
+ * the dictionary. Nearly all items are UUIDs in their canonical form (36 lowercase hexadecimal characters and dashes),
+ * those are stored as two longs in two primitive columns instead of as strings, and found back through an open
+ * addressing table of integers. That takes about 25 bytes per item, against about 200 bytes for a string in two
+ * hashmaps with their entries and boxed integers. Items that are not canonical UUIDs are kept as strings in two
+ * small hashmaps, so every item converts back to exactly the string it was added as.
+ * The dictionary is filled while a model is being loaded or built and only read after that, which is safe from
+ * several threads once it is published.
+ */
+class ItemDictionary {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int UUID_LENGTH = 36;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private int size = 0;
+    private long[] mostSignificantBits = new long[INITIAL_CAPACITY];
+    private long[] leastSignificantBits = new long[INITIAL_CAPACITY];
+    /**
+     * The open addressing table of the UUID items: the integer of an item plus one at the slot of its hash, or at one
+     * of the slots after it. 0 marks an empty slot. It is kept at most half full, so the probes stay short.
+     */
+    private int[] table = new int[2 * INITIAL_CAPACITY];
+    private final HashMap<Integer, String> otherStrings = new HashMap<>();
+    private final HashMap<String, Integer> otherIntegers = new HashMap<>();
+
+    /**
+     * @return A dictionary in which each item is stored as its position in the list
+     */
+    static ItemDictionary of(List<String> items) {
+        ItemDictionary dictionary = new ItemDictionary();
+        for (String item : items) {
+            dictionary.add(item);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Adds an item at the end of the dictionary. If it was already in the dictionary, its string now converts to the
+     * new integer, while its old integer still converts back to its string.
+     *
+     * @return The integer of the item
+     */
+    int add(String item) {
+        int integer = size;
+        if (size == mostSignificantBits.length) {
+            mostSignificantBits = Arrays.copyOf(mostSignificantBits, size * 2);
+            leastSignificantBits = Arrays.copyOf(leastSignificantBits, size * 2);
+        }
+        size += 1;
+        if (isCanonicalUuid(item)) {
+            long mostSignificant = parseHex(item, 0, 8) << 32 | parseHex(item, 9, 13) << 16 | parseHex(item, 14, 18);
+            long leastSignificant = parseHex(item, 19, 23) << 48 | parseHex(item, 24, 36);
+            mostSignificantBits[integer] = mostSignificant;
+            leastSignificantBits[integer] = leastSignificant;
+            if (2 * size > table.length)
+                rehash(2 * table.length);
+            table[slot(mostSignificant, leastSignificant)] = integer + 1;
+        } else {
+            otherStrings.put(integer, item);
+            otherIntegers.put(item, integer);
+        }
+        return integer;
+    }
+
+    /**
+     * @return The integer of the item, after adding it to the end of the dictionary if it was not in it yet
+     */
+    int intern(String item) {
+        int integer = getInteger(item);
+        return integer == RuleStore.UNKNOWN_ITEM ? add(item) : integer;
+    }
+
+    /**
+     * @return The integer of the item, or RuleStore.UNKNOWN_ITEM if it is not in the dictionary
+     */
+    int getInteger(String item) {
+        if (item == null)
+            return RuleStore.UNKNOWN_ITEM;
+        if (!isCanonicalUuid(item)) {
+            Integer integer = otherIntegers.get(item);
+            return integer == null ? RuleStore.UNKNOWN_ITEM : integer;
+        }
+        long mostSignificant = parseHex(item, 0, 8) << 32 | parseHex(item, 9, 13) << 16 | parseHex(item, 14, 18);
+        long leastSignificant = parseHex(item, 19, 23) << 48 | parseHex(item, 24, 36);
+        return table[slot(mostSignificant, leastSignificant)] - 1;
+    }
+
+    /**
+     * @return The string of the integer, or null if there is no item with that integer
+     */
+    String getString(int integer) {
+        if (integer < 0 || integer >= size)
+            return null;
+        String other = otherStrings.isEmpty() ? null : otherStrings.get(integer);
+        if (other != null)
+            return other;
+        char[] chars = new char[UUID_LENGTH];
+        formatHex(chars, mostSignificantBits[integer] >>> 32, 0, 8);
+        chars[8] = '-';
+        formatHex(chars, mostSignificantBits[integer] >>> 16, 9, 13);
+        chars[13] = '-';
+        formatHex(chars, mostSignificantBits[integer], 14, 18);
+        chars[18] = '-';
+        formatHex(chars, leastSignificantBits[integer] >>> 48, 19, 23);
+        chars[23] = '-';
+        formatHex(chars, leastSignificantBits[integer], 24, 36);
+        return new String(chars);
+    }
+
+    /**
+     * @return The amount of integers in the dictionary
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return An estimate of the memory used by the dictionary in bytes
+     */
+    long estimateMemory() {
+        // 16 bytes of header per array, 8 bytes per long and 4 per int, about 200 bytes per item that is not a UUID
+        return 3 * 16 + 8L * (mostSignificantBits.length + leastSignificantBits.length) + 4L * table.length
+                + 200L * otherStrings.size();
+    }
+
+    /**
+     * Finds the slot of a UUID in the table: the slot that holds it, or else the empty slot where it belongs.
+     */
+    private int slot(long mostSignificant, long leastSignificant) {
+        int mask = table.length - 1;
+        int slot = hash(mostSignificant, leastSignificant) & mask;
+        while (table[slot] != 0) {
+            int integer = table[slot] - 1;
+            if (mostSignificantBits[integer] == mostSignificant && leastSignificantBits[integer] == leastSignificant)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long mostSignificant, long leastSignificant) {
+        long hash = (mostSignificant * 0x9E3779B97F4A7C15L) ^ leastSignificant;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private void rehash(int capacity) {
+        int[] oldTable = table;
+        table = new int[capacity];
+        for (int entry : oldTable) {
+            if (entry != 0)
+                table[slot(mostSignificantBits[entry - 1], leastSignificantBits[entry - 1])] = entry;
+        }
+    }
+
+    /**
+     * Only the canonical form is stored as two longs, so that converting it back gives exactly the same string.
+     */
+    private static boolean isCanonicalUuid(String item) {
+        if (item.length() != UUID_LENGTH)
+            return false;
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = item.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-')
+                    return false;
+            } else if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f'))
+                return false;
+        }
+        return true;
+    }
+
+    private static long parseHex(String item, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value << 4 | Character.digit(item.charAt(i), 16);
+        }
+        return value;
+    }
+
+    private static void formatHex(char[] chars, long value, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            chars[i] = HEX_DIGITS[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+}
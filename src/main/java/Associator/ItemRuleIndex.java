@@ -0,0 +1,170 @@
+package Associator;
+
+import java.nio.IntBuffer;
+import java.util.function.IntPredicate;
+
+/**
+ * An inverted index from items to the rules that contain that item in their premise or in their consequence, used to
+ * find the related rules of items. The RuleIndex only indexes premises, since that is all that is needed to determine
+ * the frequent items. The posting lists are stored in the same way: one shared column of rule indices with an offset
+ * column per item.
+ */
+class ItemRuleIndex {
+
+    /**
+     * For each item, where its posting list starts in postingRules. The list of item i ends where the list of item i + 1 starts.
+     */
+    private final int[] postingOffsets;
+    /**
+     * The posting lists of all items after each other. Each posting list holds the indices (ascending) of the rules
+     * that contain that item.
+     */
+    private final IntBuffer postingRules;
+    /**
+     * The indices of the rules that contain an item that could not be converted to an integer.
+     */
+    private final IntBuffer unknownPostings;
+
+    ItemRuleIndex(RuleStore rules) {
+        int highestItem = -1;
+        int premiseLength = rules.size() == 0 ? 0 : rules.premiseEnd(rules.size() - 1);
+        for (int position = 0; position < premiseLength; position++) {
+            highestItem = Math.max(highestItem, rules.premiseItem(position));
+        }
+        int consequenceLength = rules.size() == 0 ? 0 : rules.consequenceEnd(rules.size() - 1);
+        for (int position = 0; position < consequenceLength; position++) {
+            highestItem = Math.max(highestItem, rules.consequenceItem(position));
+        }
+        int[] offsets = new int[highestItem + 2];
+        int unknownSize = 0;
+        int[] items = new int[16];
+        for (int rule = 0; rule < rules.size(); rule++) {
+            items = distinctItems(rules, rule, items);
+            for (int i = 1; i <= items[0]; i++) {
+                if (items[i] == RuleStore.UNKNOWN_ITEM)
+                    unknownSize += 1;
+                else
+                    offsets[items[i] + 1] += 1;
+            }
+        }
+        for (int item = 0; item <= highestItem; item++) {
+            offsets[item + 1] += offsets[item];
+        }
+
+        int[] postings = new int[offsets[highestItem + 1]];
+        int[] unknown = new int[unknownSize];
+        int[] filled = offsets.clone();
+        int unknownFilled = 0;
+        for (int rule = 0; rule < rules.size(); rule++) {
+            items = distinctItems(rules, rule, items);
+            for (int i = 1; i <= items[0]; i++) {
+                if (items[i] == RuleStore.UNKNOWN_ITEM)
+                    unknown[unknownFilled++] = rule;
+                else
+                    postings[filled[items[i]]++] = rule;
+            }
+        }
+        postingOffsets = offsets;
+        postingRules = IntBuffer.wrap(postings);
+        unknownPostings = IntBuffer.wrap(unknown);
+    }
+
+    /**
+     * Collects the distinct items of the premise and the consequence of a rule. Rules are tiny, so duplicates are found
+     * by looking back over the items that are already collected.
+     *
+     * @return The given array if it was large enough, with the amount of items in the first element and the items after it
+     */
+    private static int[] distinctItems(RuleStore rules, int rule, int[] items) {
+        int needed = 1 + rules.ruleLength(rule);
+        if (items.length < needed)
+            items = new int[needed];
+        int count = 0;
+        for (int position = rules.premiseStart(rule); position < rules.premiseEnd(rule); position++) {
+            count = addDistinct(items, count, rules.premiseItem(position));
+        }
+        for (int position = rules.consequenceStart(rule); position < rules.consequenceEnd(rule); position++) {
+            count = addDistinct(items, count, rules.consequenceItem(position));
+        }
+        items[0] = count;
+        return items;
+    }
+
+    private static int addDistinct(int[] items, int count, int item) {
+        for (int i = 1; i <= count; i++) {
+            if (items[i] == item)
+                return count;
+        }
+        items[count + 1] = item;
+        return count + 1;
+    }
+
+    /**
+     * Visits every rule that contains at least one of the given items, in ascending order, starting at fromRule. The
+     * posting lists of the items are merged, so only the rules that are visited and the postings before them are read,
+     * however many rules there are after them.
+     *
+     * @param items    The items to look for, which may contain duplicates. RuleStore.UNKNOWN_ITEM stands for an item
+     *                 that could not be converted to an integer
+     * @param fromRule The lowest rule to visit
+     * @param visitor  Receives the index of each related rule, returns false to stop
+     * @return The amount of postings that were read
+     */
+    int visitRelatedRules(int[] items, int fromRule, IntPredicate visitor) {
+        int[] distinctItems = RuleIndex.distinct(items);
+        PostingMerge merge = new PostingMerge(distinctItems.length);
+        for (int list = 0; list < distinctItems.length; list++) {
+            int item = distinctItems[list];
+            IntBuffer postings = item == RuleStore.UNKNOWN_ITEM ? unknownPostings : postingRules;
+            int end = postingsEnd(item);
+            merge.add(list, postings, lowerBound(postings, postingsStart(item), end, fromRule), end);
+        }
+        int read = 0;
+        while (!merge.isEmpty()) {
+            int rule = merge.currentRule();
+            while (!merge.isEmpty() && merge.currentRule() == rule) {
+                read += 1;
+                merge.advance();
+            }
+            if (!visitor.test(rule))
+                break;
+        }
+        return read;
+    }
+
+    /**
+     * @return The first position from start up to end of which the rule is at least the given rule
+     */
+    private static int lowerBound(IntBuffer postings, int start, int end, int rule) {
+        while (start < end) {
+            int middle = (start + end) >>> 1;
+            if (postings.get(middle) < rule)
+                start = middle + 1;
+            else
+                end = middle;
+        }
+        return start;
+    }
+
+    private int postingsStart(int item) {
+        if (item == RuleStore.UNKNOWN_ITEM || item < 0 || item >= postingOffsets.length - 1)
+            return 0;
+        return postingOffsets[item];
+    }
+
+    private int postingsEnd(int item) {
+        if (item == RuleStore.UNKNOWN_ITEM)
+            return unknownPostings.capacity();
+        if (item < 0 || item >= postingOffsets.length - 1)
+            return 0;
+        return postingOffsets[item + 1];
+    }
+
+    /**
+     * @return An estimate of the memory used by the index in bytes
+     */
+    long estimateMemory() {
+        // 16 bytes of header per array, 4 bytes per entry
+        return 3 * 16 + 4L * (postingOffsets.length + postingRules.capacity() + unknownPostings.capacity());
+    }
+}
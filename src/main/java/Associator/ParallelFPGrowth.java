@@ -0,0 +1,707 @@
+package Associator;
+
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * An FP-Growth implementation that works on the integer encoded transactions directly, instead of on weka Instances with
+ * a nominal attribute per item. The FP-tree is stored in int arrays (one entry per node for its item, parent, count and
+ * the next node with the same item) and the conditional pattern bases are mined in parallel on the common fork/join pool.
+ * <p>
+ * It takes the same options as weka's FPGrowth and follows the same steps, so it finds the same rules on the same data:
+ * -N the amount of rules to find, -U and -M the upper and lower bound of the minimum support, -D the step with which the
+ * minimum support is lowered until -N rules are found, -S to find all rules for the lower bound at once, -T the metric
+ * (0 confidence, 1 lift, 2 leverage, 3 conviction), -C the minimum value of that metric and -I the maximum amount of items
+ * in an item set. -P is accepted and ignored since the transactions are always binary.
+ * The rules are returned as FakeAssociationRules, of which the items are the indices of the attributes.
+ * <p>
+ * Internally every item is numbered by its position in weka's item order: from the most to the least frequent item,
+ * and on the name of the attribute from high to low for items that are equally frequent. The item sets and rules are
+ * generated and sorted in the same order as weka does, so when only the best -N rules are kept they are the same rules.
+ */
+class ParallelFPGrowth {
+
+    /**
+     * Conditional FP-trees with more nodes than this are mined with a task per item, smaller trees are mined by the task
+     * that built them.
+     */
+    private static final int FORK_THRESHOLD = 1024;
+    private static final int ALL_RANKS = -1;
+
+    private int numRulesToFind = 10;
+    private double upperBoundMinSupport = 1.0;
+    private double lowerBoundMinSupport = 0.1;
+    private double delta = 0.05;
+    private int metricType = 0;
+    private double minMetric = 0.9;
+    private int maxItems = -1;
+    private boolean findAllRulesForSupportLevel = false;
+
+    private final List<String> attributes;
+    /**
+     * The amount of transactions, every stored transaction counts as often as its weight.
+     */
+    private int transactionCount = 0;
+    private int storedTransactions = 0;
+    private int[] transactionOffsets = new int[1025];
+    private int[] transactionItems = new int[4096];
+    private int[] transactionWeights = new int[1024];
+
+    /**
+     * The attribute of each position in the item order, set when the associations are built.
+     */
+    private int[] orderedItems;
+
+    /**
+     * @param attributes The names of the attributes, every item of a transaction is the index of one of them
+     */
+    ParallelFPGrowth(List<String> attributes) {
+        this.attributes = attributes;
+    }
+
+    /**
+     * Sets the options in the same format as weka's FPGrowth.
+     *
+     * @param options The options to set
+     * @throws Exception An option is not valid, or it is an option of FPGrowth that is not supported
+     */
+    void setOptions(String[] options) throws Exception {
+        String[] remaining = options.clone();
+        String value = Utils.getOption('N', remaining);
+        if (!value.isEmpty())
+            numRulesToFind = Integer.parseInt(value);
+        value = Utils.getOption('U', remaining);
+        if (!value.isEmpty())
+            upperBoundMinSupport = Double.parseDouble(value);
+        value = Utils.getOption('M', remaining);
+        if (!value.isEmpty())
+            lowerBoundMinSupport = Double.parseDouble(value);
+        value = Utils.getOption('D', remaining);
+        if (!value.isEmpty())
+            delta = Double.parseDouble(value);
+        value = Utils.getOption('T', remaining);
+        if (!value.isEmpty())
+            metricType = Integer.parseInt(value);
+        if (metricType < 0 || metricType > 3)
+            throw new IllegalArgumentException("Unknown metric type " + metricType);
+        value = Utils.getOption('C', remaining);
+        if (!value.isEmpty())
+            minMetric = Double.parseDouble(value);
+        value = Utils.getOption('I', remaining);
+        if (!value.isEmpty())
+            maxItems = Integer.parseInt(value);
+        Utils.getOption('P', remaining);
+        findAllRulesForSupportLevel = Utils.getFlag('S', remaining);
+        if (!Utils.getOption("transactions", remaining).isEmpty() || !Utils.getOption("rules", remaining).isEmpty()
+                || Utils.getFlag("use-or", remaining))
+            throw new IllegalArgumentException("-transactions, -rules and -use-or are not supported by PARALLEL_FPGROWTH");
+        Utils.checkForRemainingOptions(remaining);
+    }
+
+    /**
+     * Adds a transaction. The given array is copied, so it can be reused by the caller.
+     *
+     * @param items  The indices of the attributes in the transaction, without duplicates. Only the first length are used
+     * @param length The amount of items in the transaction
+     */
+    void addTransaction(int[] items, int length) {
+        addTransaction(items, length, 1);
+    }
+
+    /**
+     * Adds a transaction that occurs several times in the data. This finds the same rules as adding the transaction
+     * that many times, since the FP-tree only keeps the counts of the paths.
+     *
+     * @param weight The amount of times the transaction occurs, at least 1
+     */
+    void addTransaction(int[] items, int length, int weight) {
+        if (storedTransactions + 1 == transactionOffsets.length) {
+            transactionOffsets = Arrays.copyOf(transactionOffsets, transactionOffsets.length * 2);
+            transactionWeights = Arrays.copyOf(transactionWeights, transactionOffsets.length - 1);
+        }
+        int start = transactionOffsets[storedTransactions];
+        if (start + length > transactionItems.length)
+            transactionItems = Arrays.copyOf(transactionItems, Math.max(start + length, transactionItems.length * 2));
+        System.arraycopy(items, 0, transactionItems, start, length);
+        transactionWeights[storedTransactions] = weight;
+        storedTransactions += 1;
+        transactionOffsets[storedTransactions] = start + length;
+        transactionCount += weight;
+    }
+
+    /**
+     * Finds the rules. Like weka's FPGrowth, the minimum support starts at 1 (or at the lower bound if -S is given) and
+     * is lowered by -D until at least -N rules are found or the lower bound is reached. Without -S only the best -N
+     * rules of the last step are returned, like FPGrowth.getAssociationRules does.
+     *
+     * @return The rules, sorted on their metric from high to low
+     */
+    List<FakeAssociationRule> buildAssociations() {
+        int upperBoundCount = upperBoundMinSupport > 1 ? (int) upperBoundMinSupport : (int) Math.ceil(upperBoundMinSupport * transactionCount);
+        int lowerBoundCount = lowerBoundMinSupport > 1 ? (int) lowerBoundMinSupport : (int) Math.ceil(lowerBoundMinSupport * transactionCount);
+        double lowerBoundFraction = lowerBoundMinSupport > 1 ? lowerBoundMinSupport / transactionCount : lowerBoundMinSupport;
+        double deltaFraction = delta > 1 ? delta / transactionCount : delta;
+        double currentSupport = findAllRulesForSupportLevel ? lowerBoundFraction : 1.0;
+        int[] supports = orderItems();
+        boolean lastIteration = false;
+        List<FakeAssociationRule> rules;
+        while (true) {
+            int minSupport = currentSupport > 1 ? (int) currentSupport : (int) Math.ceil(currentSupport * transactionCount);
+            ItemSets itemSets = mineItemSets(supports, Math.max(1, minSupport));
+            rules = generateRules(itemSets, upperBoundCount, lowerBoundCount);
+            if (findAllRulesForSupportLevel || lastIteration)
+                break;
+            currentSupport -= deltaFraction;
+            if (currentSupport < lowerBoundFraction) {
+                if (currentSupport + deltaFraction > lowerBoundFraction) {
+                    currentSupport = lowerBoundFraction;
+                    lastIteration = true;
+                } else {
+                    break;
+                }
+            }
+            if (rules.size() >= numRulesToFind)
+                break;
+        }
+        // a stable sort, so rules with the same metric keep the order in which they were generated
+        rules.sort(Comparator.comparingDouble((FakeAssociationRule rule) -> metric(rule.getPremiseSupport(),
+                rule.getConsequenceSupport(), rule.getTotalSupport())).reversed());
+        if (!findAllRulesForSupportLevel && rules.size() > numRulesToFind)
+            rules = new ArrayList<>(rules.subList(0, numRulesToFind));
+        return rules;
+    }
+
+    /**
+     * Counts the support of every attribute and puts them in weka's item order.
+     *
+     * @return The support of each position in the item order
+     */
+    private int[] orderItems() {
+        int[] attributeSupports = new int[attributes.size()];
+        for (int transaction = 0; transaction < storedTransactions; transaction++) {
+            for (int position = transactionOffsets[transaction]; position < transactionOffsets[transaction + 1]; position++) {
+                attributeSupports[transactionItems[position]] += transactionWeights[transaction];
+            }
+        }
+        orderedItems = IntStream.range(0, attributes.size()).boxed()
+                .sorted(Comparator.comparingInt((Integer item) -> -attributeSupports[item])
+                        .thenComparing(item -> attributes.get(item), Comparator.reverseOrder()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        int[] supports = new int[orderedItems.length];
+        for (int position = 0; position < orderedItems.length; position++) {
+            supports[position] = attributeSupports[orderedItems[position]];
+        }
+        return supports;
+    }
+
+    /**
+     * Builds the FP-tree of all transactions and mines every item set with at least the given support.
+     * The ranks of the tree are the positions in the item order, so the frequent items are the first positions.
+     */
+    private ItemSets mineItemSets(int[] supports, int minSupport) {
+        int frequentCount = 0;
+        while (frequentCount < supports.length && supports[frequentCount] >= minSupport) {
+            frequentCount += 1;
+        }
+        int[] rankOfItem = new int[attributes.size()];
+        Arrays.fill(rankOfItem, -1);
+        int[] rankItems = new int[frequentCount];
+        for (int rank = 0; rank < frequentCount; rank++) {
+            rankItems[rank] = rank;
+            rankOfItem[orderedItems[rank]] = rank;
+        }
+
+        FPTree tree = new FPTree(rankItems, Arrays.copyOf(supports, frequentCount), storedTransactions);
+        int[] ranks = new int[16];
+        for (int transaction = 0; transaction < storedTransactions; transaction++) {
+            int length = 0;
+            for (int position = transactionOffsets[transaction]; position < transactionOffsets[transaction + 1]; position++) {
+                int rank = rankOfItem[transactionItems[position]];
+                if (rank >= 0) {
+                    if (length == ranks.length)
+                        ranks = Arrays.copyOf(ranks, length * 2);
+                    ranks[length++] = rank;
+                }
+            }
+            Arrays.sort(ranks, 0, length);
+            tree.insert(ranks, length, transactionWeights[transaction]);
+        }
+        tree.finish();
+        return ForkJoinPool.commonPool().invoke(new MineTask(tree, ALL_RANKS, new int[0], minSupport));
+    }
+
+    /**
+     * Orders on support from high to low, and on the rank from low to high when the supports are equal.
+     */
+    private static long sortKey(int support, int rank) {
+        return ((long) (Integer.MAX_VALUE - support) << 32) | rank;
+    }
+
+    /**
+     * Mines the item sets of one item of a tree, or of all items of the tree if the rank is ALL_RANKS.
+     */
+    private class MineTask extends RecursiveTask<ItemSets> {
+        private static final long serialVersionUID = 1L;
+        private final FPTree tree;
+        private final int rank;
+        private final int[] prefix;
+        private final int minSupport;
+
+        MineTask(FPTree tree, int rank, int[] prefix, int minSupport) {
+            this.tree = tree;
+            this.rank = rank;
+            this.prefix = prefix;
+            this.minSupport = minSupport;
+        }
+
+        @Override
+        protected ItemSets compute() {
+            ItemSets result = new ItemSets();
+            if (rank == ALL_RANKS)
+                mineTree(tree, prefix, minSupport, result);
+            else
+                mineItem(tree, rank, prefix, minSupport, result);
+            return result;
+        }
+    }
+
+    private void mineTree(FPTree tree, int[] prefix, int minSupport, ItemSets result) {
+        if (tree.size > FORK_THRESHOLD && tree.rankCount() > 1) {
+            List<MineTask> tasks = new ArrayList<>();
+            for (int rank = tree.rankCount() - 1; rank >= 0; rank--) {
+                tasks.add(new MineTask(tree, rank, prefix, minSupport));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            for (MineTask task : tasks) {
+                result.addAll(task.join());
+            }
+        } else {
+            for (int rank = tree.rankCount() - 1; rank >= 0; rank--) {
+                mineItem(tree, rank, prefix, minSupport, result);
+            }
+        }
+    }
+
+    /**
+     * Adds the prefix extended with the item of the rank, and mines the conditional FP-tree of that item.
+     */
+    private void mineItem(FPTree tree, int rank, int[] prefix, int minSupport, ItemSets result) {
+        int[] itemSet = insertSorted(prefix, tree.rankItems[rank]);
+        result.add(itemSet, tree.rankSupports[rank]);
+        if (maxItems > 0 && itemSet.length >= maxItems)
+            return;
+        FPTree conditional = conditionalTree(tree, rank, minSupport);
+        if (conditional != null)
+            mineTree(conditional, itemSet, minSupport, result);
+    }
+
+    private static int[] insertSorted(int[] items, int item) {
+        int[] result = new int[items.length + 1];
+        int position = 0;
+        while (position < items.length && items[position] < item) {
+            result[position] = items[position];
+            position += 1;
+        }
+        result[position] = item;
+        System.arraycopy(items, position, result, position + 1, items.length - position);
+        return result;
+    }
+
+    /**
+     * Builds the FP-tree of the conditional pattern base of a rank: the paths from every node of that rank up to the root,
+     * each weighted with the count of the node. Only items that are frequent within the pattern base are kept.
+     *
+     * @return The conditional FP-tree, or null if no item is frequent within the pattern base
+     */
+    private static FPTree conditionalTree(FPTree tree, int rank, int minSupport) {
+        // the ancestors of a node always have a lower rank than the node itself
+        int[] supports = new int[rank];
+        for (int node = tree.headers[rank]; node >= 0; node = tree.nodeNext[node]) {
+            int count = tree.nodeCounts[node];
+            for (int parent = tree.nodeParents[node]; parent != FPTree.ROOT; parent = tree.nodeParents[parent]) {
+                supports[tree.nodeRanks[parent]] += count;
+            }
+        }
+        int frequentCount = 0;
+        for (int support : supports) {
+            if (support >= minSupport)
+                frequentCount += 1;
+        }
+        if (frequentCount == 0)
+            return null;
+        long[] order = new long[frequentCount];
+        frequentCount = 0;
+        for (int oldRank = 0; oldRank < rank; oldRank++) {
+            if (supports[oldRank] >= minSupport)
+                order[frequentCount++] = sortKey(supports[oldRank], oldRank);
+        }
+        Arrays.sort(order);
+        int[] newRanks = new int[rank];
+        Arrays.fill(newRanks, -1);
+        int[] rankItems = new int[frequentCount];
+        int[] rankSupports = new int[frequentCount];
+        for (int newRank = 0; newRank < frequentCount; newRank++) {
+            int oldRank = (int) order[newRank];
+            newRanks[oldRank] = newRank;
+            rankItems[newRank] = tree.rankItems[oldRank];
+            rankSupports[newRank] = supports[oldRank];
+        }
+
+        FPTree conditional = new FPTree(rankItems, rankSupports, 16);
+        int[] path = new int[rank];
+        for (int node = tree.headers[rank]; node >= 0; node = tree.nodeNext[node]) {
+            int length = 0;
+            for (int parent = tree.nodeParents[node]; parent != FPTree.ROOT; parent = tree.nodeParents[parent]) {
+                int newRank = newRanks[tree.nodeRanks[parent]];
+                if (newRank >= 0)
+                    path[length++] = newRank;
+            }
+            Arrays.sort(path, 0, length);
+            conditional.insert(path, length, tree.nodeCounts[node]);
+        }
+        conditional.finish();
+        return conditional;
+    }
+
+    /**
+     * Turns every item set of more than one item into rules, with each non-empty proper subset as the premise and the
+     * other items as the consequence, like weka's FPGrowth.generateRulesBruteForce. The item sets are handled in parallel,
+     * but the rules are returned in weka's order: the item sets from small to large and in item order.
+     */
+    private List<FakeAssociationRule> generateRules(ItemSets itemSets, int upperBoundCount, int lowerBoundCount) {
+        SupportTable supportTable = new SupportTable(itemSets);
+        return IntStream.range(0, itemSets.size).boxed()
+                .filter(set -> itemSets.length(set) > 1)
+                .sorted(itemSets::compare)
+                .parallel()
+                .map(set -> rulesOf(itemSets, set, supportTable, upperBoundCount, lowerBoundCount))
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    private List<FakeAssociationRule> rulesOf(ItemSets itemSets, int set, SupportTable supportTable,
+                                              int upperBoundCount, int lowerBoundCount) {
+        List<FakeAssociationRule> rules = new ArrayList<>();
+        int totalSupport = itemSets.supports[set];
+        if (totalSupport < lowerBoundCount || totalSupport > upperBoundCount)
+            return rules;
+        int length = itemSets.length(set);
+        if (length > 62)
+            throw new IllegalArgumentException("An item set of " + length + " items has too many subsets, limit the items with -I");
+        int start = itemSets.offsets[set];
+        int[] premise = new int[length];
+        int[] consequence = new int[length];
+        for (long subset = 1; subset < (1L << length) - 1; subset++) {
+            int premiseLength = 0;
+            int consequenceLength = 0;
+            for (int i = 0; i < length; i++) {
+                if ((subset & (1L << i)) != 0)
+                    premise[premiseLength++] = itemSets.items[start + i];
+                else
+                    consequence[consequenceLength++] = itemSets.items[start + i];
+            }
+            int premiseSupport = supportTable.support(premise, premiseLength);
+            int consequenceSupport = supportTable.support(consequence, consequenceLength);
+            if (metric(premiseSupport, consequenceSupport, totalSupport) > minMetric)
+                rules.add(new FakeAssociationRule(toList(premise, premiseLength), toList(consequence, consequenceLength),
+                        premiseSupport, consequenceSupport, totalSupport));
+        }
+        return rules;
+    }
+
+    /**
+     * Converts positions in the item order back to the indices of the attributes.
+     */
+    private List<Integer> toList(int[] positions, int length) {
+        List<Integer> list = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            list.add(orderedItems[positions[i]]);
+        }
+        return list;
+    }
+
+    /**
+     * Computes the metric of a rule the same way as weka's DefaultAssociationRule.METRIC_TYPE.
+     */
+    private double metric(int premiseSupport, int consequenceSupport, int totalSupport) {
+        double confidence = totalSupport / (double) premiseSupport;
+        switch (metricType) {
+            case 1:
+                return confidence / (consequenceSupport / (double) transactionCount);
+            case 2:
+                return totalSupport / (double) transactionCount
+                        - (premiseSupport / (double) transactionCount) * (consequenceSupport / (double) transactionCount);
+            case 3:
+                return premiseSupport * (double) (transactionCount - consequenceSupport) / transactionCount
+                        / (double) (premiseSupport - totalSupport + 1);
+            default:
+                return confidence;
+        }
+    }
+
+    /**
+     * An FP-tree in int arrays. Node 0 is the root. The items of the tree are numbered by rank, from the most to the
+     * least frequent, and every path from the root goes through increasing ranks.
+     */
+    private static final class FPTree {
+        private static final int ROOT = 0;
+
+        private final int[] rankItems;
+        private final int[] rankSupports;
+        /**
+         * For each rank the last added node of that rank, the other nodes are reached through nodeNext.
+         */
+        private final int[] headers;
+        private int[] nodeRanks;
+        private int[] nodeParents;
+        private int[] nodeCounts;
+        private int[] nodeNext;
+        private int size = 1;
+        /**
+         * Finds the child of a node with a given rank while the tree is built.
+         */
+        private ChildTable children;
+
+        FPTree(int[] rankItems, int[] rankSupports, int expectedNodes) {
+            this.rankItems = rankItems;
+            this.rankSupports = rankSupports;
+            headers = new int[rankItems.length];
+            Arrays.fill(headers, -1);
+            int capacity = Math.max(16, expectedNodes);
+            nodeRanks = new int[capacity];
+            nodeParents = new int[capacity];
+            nodeCounts = new int[capacity];
+            nodeNext = new int[capacity];
+            nodeRanks[ROOT] = -1;
+            nodeParents[ROOT] = -1;
+            children = new ChildTable();
+        }
+
+        int rankCount() {
+            return rankItems.length;
+        }
+
+        /**
+         * Adds a path of ascending ranks to the tree with the given count.
+         */
+        void insert(int[] ranks, int length, int count) {
+            int node = ROOT;
+            for (int i = 0; i < length; i++) {
+                int child = children.get(node, ranks[i]);
+                if (child < 0) {
+                    child = addNode(ranks[i], node);
+                    children.put(node, ranks[i], child);
+                }
+                nodeCounts[child] += count;
+                node = child;
+            }
+        }
+
+        private int addNode(int rank, int parent) {
+            if (size == nodeRanks.length) {
+                int capacity = size * 2;
+                nodeRanks = Arrays.copyOf(nodeRanks, capacity);
+                nodeParents = Arrays.copyOf(nodeParents, capacity);
+                nodeCounts = Arrays.copyOf(nodeCounts, capacity);
+                nodeNext = Arrays.copyOf(nodeNext, capacity);
+            }
+            int node = size++;
+            nodeRanks[node] = rank;
+            nodeParents[node] = parent;
+            nodeNext[node] = headers[rank];
+            headers[rank] = node;
+            return node;
+        }
+
+        /**
+         * Drops the lookup table of the children once the tree is complete, mining only walks up the tree.
+         */
+        void finish() {
+            children = null;
+        }
+    }
+
+    /**
+     * An open addressing table from (parent node, rank) to the child node.
+     */
+    private static final class ChildTable {
+        private long[] keys = new long[32];
+        private int[] values = new int[32];
+        private int size = 0;
+
+        ChildTable() {
+            Arrays.fill(keys, -1L);
+        }
+
+        private static long key(int parent, int rank) {
+            return ((long) parent << 32) | rank;
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & mask;
+        }
+
+        int get(int parent, int rank) {
+            long key = key(parent, rank);
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); keys[slot] != -1L; slot = (slot + 1) & mask) {
+                if (keys[slot] == key)
+                    return values[slot];
+            }
+            return -1;
+        }
+
+        void put(int parent, int rank, int child) {
+            if (2 * (size + 1) > keys.length)
+                resize();
+            insert(key(parent, rank), child);
+            size += 1;
+        }
+
+        private void insert(long key, int value) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (keys[slot] != -1L) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            Arrays.fill(keys, -1L);
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != -1L)
+                    insert(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    /**
+     * Mined item sets in one shared column, the items of each set are positions in the item order and sorted.
+     */
+    private static final class ItemSets {
+        private int[] offsets = new int[17];
+        private int[] items = new int[64];
+        private int[] supports = new int[16];
+        private int size = 0;
+
+        void add(int[] itemSet, int support) {
+            if (size == supports.length) {
+                supports = Arrays.copyOf(supports, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2 + 1);
+            }
+            int start = offsets[size];
+            if (start + itemSet.length > items.length)
+                items = Arrays.copyOf(items, Math.max(start + itemSet.length, items.length * 2));
+            System.arraycopy(itemSet, 0, items, start, itemSet.length);
+            supports[size] = support;
+            size += 1;
+            offsets[size] = start + itemSet.length;
+        }
+
+        void addAll(ItemSets other) {
+            if (size + other.size > supports.length) {
+                supports = Arrays.copyOf(supports, Math.max(size + other.size, size * 2));
+                offsets = Arrays.copyOf(offsets, supports.length + 1);
+            }
+            int start = offsets[size];
+            int otherLength = other.offsets[other.size];
+            if (start + otherLength > items.length)
+                items = Arrays.copyOf(items, Math.max(start + otherLength, items.length * 2));
+            System.arraycopy(other.items, 0, items, start, otherLength);
+            System.arraycopy(other.supports, 0, supports, size, other.size);
+            for (int set = 1; set <= other.size; set++) {
+                offsets[size + set] = start + other.offsets[set];
+            }
+            size += other.size;
+        }
+
+        int length(int set) {
+            return offsets[set + 1] - offsets[set];
+        }
+
+        /**
+         * Orders the sets from small to large, and sets of the same size on their items.
+         */
+        int compare(int set, int other) {
+            if (length(set) != length(other))
+                return Integer.compare(length(set), length(other));
+            for (int i = 0; i < length(set); i++) {
+                int difference = Integer.compare(items[offsets[set] + i], items[offsets[other] + i]);
+                if (difference != 0)
+                    return difference;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Finds the support of an item set. Every subset of a frequent item set is frequent as well, so the support of each
+     * premise and consequence can be found here.
+     */
+    private static final class SupportTable {
+        private final ItemSets itemSets;
+        private final int[] slots;
+        private final int mask;
+
+        SupportTable(ItemSets itemSets) {
+            this.itemSets = itemSets;
+            int capacity = Integer.highestOneBit(Math.max(2, itemSets.size) * 2 - 1) << 1;
+            slots = new int[capacity];
+            Arrays.fill(slots, -1);
+            mask = capacity - 1;
+            for (int set = 0; set < itemSets.size; set++) {
+                int start = itemSets.offsets[set];
+                int slot = hash(itemSets.items, start, itemSets.length(set)) & mask;
+                while (slots[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = set;
+            }
+        }
+
+        private static int hash(int[] items, int start, int length) {
+            int hash = 1;
+            for (int i = start; i < start + length; i++) {
+                hash = 31 * hash + items[i];
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        /**
+         * @return The support of the sorted items, or 0 if they are not a mined item set
+         */
+        int support(int[] items, int length) {
+            for (int slot = hash(items, 0, length) & mask; slots[slot] >= 0; slot = (slot + 1) & mask) {
+                int set = slots[slot];
+                if (itemSets.length(set) == length && equalItems(items, itemSets.items, itemSets.offsets[set], length))
+                    return itemSets.supports[set];
+            }
+            return 0;
+        }
+
+        private static boolean equalItems(int[] items, int[] setItems, int start, int length) {
+            for (int i = 0; i < length; i++) {
+                if (items[i] != setItems[start + i])
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package Associator;
+
+import java.nio.IntBuffer;
+
+/**
+ * Merges sorted posting lists with a small binary heap that holds one cursor per list, so the rules of all lists come
+ * out in ascending order. A rule that is in several lists comes out once for every list, right after each other.
+ * Each list is a range of an IntBuffer and is identified by the number it is added with.
+ */
+class PostingMerge {
+
+    private final IntBuffer[] buffers;
+    private final int[] positions;
+    private final int[] ends;
+    private final int[] heap;
+    private int heapSize = 0;
+
+    /**
+     * @param listCount The amount of lists that will be added, the highest number a list can be added with is one less
+     */
+    PostingMerge(int listCount) {
+        buffers = new IntBuffer[listCount];
+        positions = new int[listCount];
+        ends = new int[listCount];
+        heap = new int[listCount];
+    }
+
+    /**
+     * Adds the rules of buffer from start up to end as a list, an empty list is skipped.
+     */
+    void add(int list, IntBuffer buffer, int start, int end) {
+        if (start >= end)
+            return;
+        buffers[list] = buffer;
+        positions[list] = start;
+        ends[list] = end;
+        int index = heapSize++;
+        while (index > 0 && current(heap[(index - 1) / 2]) > buffer.get(start)) {
+            heap[index] = heap[(index - 1) / 2];
+            index = (index - 1) / 2;
+        }
+        heap[index] = list;
+    }
+
+    boolean isEmpty() {
+        return heapSize == 0;
+    }
+
+    /**
+     * @return The lowest rule that did not come out yet
+     */
+    int currentRule() {
+        return current(heap[0]);
+    }
+
+    /**
+     * @return The list that the current rule comes from
+     */
+    int currentList() {
+        return heap[0];
+    }
+
+    /**
+     * Moves past the current rule of the current list.
+     */
+    void advance() {
+        int list = heap[0];
+        positions[list] += 1;
+        if (positions[list] == ends[list]) {
+            heap[0] = heap[--heapSize];
+            if (heapSize == 0)
+                return;
+        }
+        siftDown();
+    }
+
+    private void siftDown() {
+        int index = 0;
+        int list = heap[0];
+        int rule = current(list);
+        while (2 * index + 1 < heapSize) {
+            int child = 2 * index + 1;
+            if (child + 1 < heapSize && current(heap[child + 1]) < current(heap[child]))
+                child += 1;
+            if (current(heap[child]) >= rule)
+                break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = list;
+    }
+
+    private int current(int list) {
+        return buffers[list].get(positions[list]);
+    }
+}
@@ -0,0 +1,186 @@
+package Associator;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds the item dictionary and the rules of a model while its RDF file is being parsed, so no repository or query is needed.
+ * Every ns:from and ns:to item is converted to an integer as soon as it is read, and a rule is added to the RuleStore as
+ * soon as the parser moves on to the next subject. Only the rules whose statements have not all been seen yet are kept,
+ * which is one rule for files written by AssociatorWriter since the statements of a rule are written together.
+ * <p>
+ * The same rules are loaded as the SPARQL query in loadRulesFromRDF: the rules linked to the requested model through ns:rule
+ * that have at least one ns:from and ns:to item and all three supports, with duplicate items removed.
+ */
+class RuleFileHandler extends AbstractRDFHandler {
+
+    private static final String NS = "http://mu.semte.ch/vocabularies/ext/weka-service/";
+
+    /**
+     * The statements of a rule that have been read so far.
+     */
+    private static class PartialRule {
+        private int[] premise = new int[4];
+        private int premiseLength = 0;
+        private int[] consequence = new int[4];
+        private int consequenceLength = 0;
+        private Integer premiseSupport;
+        private Integer consequenceSupport;
+        private Integer totalSupport;
+        private boolean linked = false;
+
+        private void addPremise(int item) {
+            if (!contains(premise, premiseLength, item)) {
+                premise = ensureCapacity(premise, premiseLength + 1);
+                premise[premiseLength++] = item;
+            }
+        }
+
+        private void addConsequence(int item) {
+            if (!contains(consequence, consequenceLength, item)) {
+                consequence = ensureCapacity(consequence, consequenceLength + 1);
+                consequence[consequenceLength++] = item;
+            }
+        }
+
+        private boolean isComplete() {
+            return linked && premiseLength > 0 && consequenceLength > 0
+                    && premiseSupport != null && consequenceSupport != null && totalSupport != null;
+        }
+    }
+
+    private final String modelIri;
+    private final ItemDictionary dictionary = new ItemDictionary();
+    private final RuleStore rules = new RuleStore();
+    /**
+     * The rules that have not been added to the RuleStore yet, in the order in which they were first seen.
+     */
+    private final Map<Resource, PartialRule> pendingRules = new LinkedHashMap<>();
+    private Resource currentRule = null;
+
+    /**
+     * @param identifier The identifier of the model of which the rules are loaded
+     */
+    RuleFileHandler(String identifier) {
+        modelIri = NS + "wekaService/" + identifier;
+    }
+
+    @Override
+    public void handleStatement(Statement statement) throws RDFHandlerException {
+        IRI predicate = statement.getPredicate();
+        if (!predicate.getNamespace().equals(NS))
+            return;
+        String name = predicate.getLocalName();
+        if (name.equals("rule")) {
+            if (statement.getSubject().stringValue().equals(modelIri) && statement.getObject() instanceof Resource) {
+                Resource rule = (Resource) statement.getObject();
+                pendingRuleOf(rule).linked = true;
+            }
+            return;
+        }
+        if (!name.equals("from") && !name.equals("to") && !name.endsWith("Support"))
+            return;
+
+        Resource subject = statement.getSubject();
+        if (currentRule != null && !currentRule.equals(subject))
+            flush(currentRule);
+        currentRule = subject;
+        PartialRule rule = pendingRuleOf(subject);
+        Value object = statement.getObject();
+        switch (name) {
+            case "from":
+                rule.addPremise(toInteger(object.stringValue()));
+                break;
+            case "to":
+                rule.addConsequence(toInteger(object.stringValue()));
+                break;
+            case "premiseSupport":
+                if (rule.premiseSupport == null)
+                    rule.premiseSupport = Integer.valueOf(object.stringValue());
+                break;
+            case "consequenceSupport":
+                if (rule.consequenceSupport == null)
+                    rule.consequenceSupport = Integer.valueOf(object.stringValue());
+                break;
+            case "totalSupport":
+                if (rule.totalSupport == null)
+                    rule.totalSupport = Integer.valueOf(object.stringValue());
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void endRDF() throws RDFHandlerException {
+        Iterator<Map.Entry<Resource, PartialRule>> iterator = pendingRules.entrySet().iterator();
+        while (iterator.hasNext()) {
+            PartialRule rule = iterator.next().getValue();
+            if (rule.isComplete())
+                addRule(rule);
+            iterator.remove();
+        }
+        currentRule = null;
+    }
+
+    /**
+     * Adds the rule to the RuleStore once the parser has moved on to another subject, if it is complete.
+     * A rule that is not linked to the model yet is kept, since the link can still follow.
+     */
+    private void flush(Resource subject) {
+        PartialRule rule = pendingRules.get(subject);
+        if (rule != null && rule.isComplete()) {
+            addRule(rule);
+            pendingRules.remove(subject);
+        }
+    }
+
+    private void addRule(PartialRule rule) {
+        rules.addRule(rule.premise, rule.premiseLength, rule.consequence, rule.consequenceLength,
+                rule.premiseSupport, rule.consequenceSupport, rule.totalSupport);
+    }
+
+    private PartialRule pendingRuleOf(Resource subject) {
+        PartialRule rule = pendingRules.get(subject);
+        if (rule == null) {
+            rule = new PartialRule();
+            pendingRules.put(subject, rule);
+        }
+        return rule;
+    }
+
+    /**
+     * Converts an item to its integer, adding it to the dictionary if it is new.
+     */
+    private int toInteger(String item) {
+        return dictionary.intern(item);
+    }
+
+    private static boolean contains(int[] items, int length, int item) {
+        for (int i = 0; i < length; i++) {
+            if (items[i] == item)
+                return true;
+        }
+        return false;
+    }
+
+    private static int[] ensureCapacity(int[] items, int needed) {
+        return needed <= items.length ? items : Arrays.copyOf(items, items.length * 2);
+    }
+
+    /**
+     * @return The loaded model, to be called once the whole file is parsed
+     */
+    AssociatorModel getModel() {
+        return AssociatorModel.of(rules, dictionary);
+    }
+}
@@ -0,0 +1,248 @@
+package Associator;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * An inverted index from items to the rules whose premise contains that item. It is built once when a model is loaded,
+ * so that determining the frequent items only has to look at the rules that are reachable from the given attributes
+ * instead of going over every loaded rule.
+ * The posting lists are stored like the rules in a RuleStore: one shared column of rule indices with an offset column
+ * per item, so the index can be written to and mapped from a binary rule file as well.
+ */
+class RuleIndex {
+
+    /**
+     * For each item, where its posting list starts in postingRules. The list of item i ends where the list of item i + 1 starts.
+     */
+    private final IntBuffer postingOffsets;
+    /**
+     * The posting lists of all items after each other. Each posting list holds the indices (ascending) of the rules
+     * whose premise contains that item.
+     */
+    private final IntBuffer postingRules;
+    /**
+     * The indices of the rules whose premise contains an item that could not be converted to an integer.
+     */
+    private final IntBuffer unknownPostings;
+    /**
+     * The indices of the rules with an empty premise, these match any list of attributes.
+     */
+    private final IntBuffer emptyPremises;
+    /**
+     * The amount of distinct items in the premise of each rule. A rule matches when every one of them is hit.
+     */
+    private final IntBuffer premiseSizes;
+
+    RuleIndex(RuleStore rules) {
+        int highestItem = -1;
+        int premiseLength = rules.size() == 0 ? 0 : rules.premiseEnd(rules.size() - 1);
+        for (int position = 0; position < premiseLength; position++) {
+            highestItem = Math.max(highestItem, rules.premiseItem(position));
+        }
+        int[] offsets = new int[highestItem + 2];
+        int unknownSize = 0;
+        int emptySize = 0;
+        int[] sizes = new int[rules.size()];
+        for (int rule = 0; rule < rules.size(); rule++) {
+            for (int position = rules.premiseStart(rule); position < rules.premiseEnd(rule); position++) {
+                int item = rules.premiseItem(position);
+                if (isFirstOccurrence(rules, rule, position)) {
+                    sizes[rule] += 1;
+                    if (item == RuleStore.UNKNOWN_ITEM)
+                        unknownSize += 1;
+                    else
+                        offsets[item + 1] += 1;
+                }
+            }
+            if (sizes[rule] == 0)
+                emptySize += 1;
+        }
+        for (int item = 0; item <= highestItem; item++) {
+            offsets[item + 1] += offsets[item];
+        }
+
+        int[] postings = new int[offsets[highestItem + 1]];
+        int[] unknown = new int[unknownSize];
+        int[] empty = new int[emptySize];
+        int[] filled = Arrays.copyOf(offsets, highestItem + 1);
+        int unknownFilled = 0;
+        int emptyFilled = 0;
+        for (int rule = 0; rule < rules.size(); rule++) {
+            if (sizes[rule] == 0)
+                empty[emptyFilled++] = rule;
+            for (int position = rules.premiseStart(rule); position < rules.premiseEnd(rule); position++) {
+                int item = rules.premiseItem(position);
+                if (!isFirstOccurrence(rules, rule, position))
+                    continue;
+                if (item == RuleStore.UNKNOWN_ITEM)
+                    unknown[unknownFilled++] = rule;
+                else
+                    postings[filled[item]++] = rule;
+            }
+        }
+        postingOffsets = IntBuffer.wrap(offsets);
+        postingRules = IntBuffer.wrap(postings);
+        unknownPostings = IntBuffer.wrap(unknown);
+        emptyPremises = IntBuffer.wrap(empty);
+        premiseSizes = IntBuffer.wrap(sizes);
+    }
+
+    /**
+     * Creates an index over existing columns, for example columns that are mapped from a file.
+     */
+    RuleIndex(IntBuffer postingOffsets, IntBuffer postingRules, IntBuffer unknownPostings, IntBuffer emptyPremises,
+              IntBuffer premiseSizes) {
+        this.postingOffsets = postingOffsets;
+        this.postingRules = postingRules;
+        this.unknownPostings = unknownPostings;
+        this.emptyPremises = emptyPremises;
+        this.premiseSizes = premiseSizes;
+    }
+
+    /**
+     * Premises are tiny, so duplicates are found by looking back over the items before the given position.
+     */
+    private static boolean isFirstOccurrence(RuleStore rules, int rule, int position) {
+        int item = rules.premiseItem(position);
+        for (int before = rules.premiseStart(rule); before < position; before++) {
+            if (rules.premiseItem(before) == item)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds every rule of which the whole premise is contained in the given items. The posting lists of the given items
+     * are merged by visitMatchingRules, so the hits of a rule are counted while the merge passes it, and no counter per
+     * rule is kept between requests.
+     *
+     * @param items The items to match against, which may contain duplicates. RuleStore.UNKNOWN_ITEM stands for an item
+     *              that could not be converted to an integer
+     * @return The indices of the matching rules, in ascending order, so in the same order as the loaded rules
+     */
+    int[] matchingRules(int[] items) {
+        int[] matched = new int[postingCount(items) + emptyPremises.capacity()];
+        int[] matchedCount = {0};
+        visitMatchingRules(items, rule -> {
+            matched[matchedCount[0]++] = rule;
+            return true;
+        });
+        return Arrays.copyOf(matched, matchedCount[0]);
+    }
+
+    /**
+     * Visits the same rules as matchingRules returns, in the same ascending order, but without counting the hits of
+     * every reachable rule first. The posting lists of the distinct items, and the list of rules with an empty premise,
+     * are merged with a PostingMerge. All postings of one rule then come out after each other, so whether it matches
+     * is known as soon as the merge moves past it. When the visitor stops the merge, the rest of the posting lists is
+     * never read.
+     *
+     * @param items   The items to match against, like for matchingRules
+     * @param visitor Receives the index of each matching rule, returns false to stop the merge
+     * @return The amount of postings that were read
+     */
+    int visitMatchingRules(int[] items, IntPredicate visitor) {
+        int[] distinctItems = distinct(items);
+        int emptyList = distinctItems.length;
+        PostingMerge merge = new PostingMerge(distinctItems.length + 1);
+        for (int list = 0; list < distinctItems.length; list++) {
+            int item = distinctItems[list];
+            merge.add(list, item == RuleStore.UNKNOWN_ITEM ? unknownPostings : postingRules, postingsStart(item), postingsEnd(item));
+        }
+        merge.add(emptyList, emptyPremises, 0, emptyPremises.capacity());
+
+        int read = 0;
+        while (!merge.isEmpty()) {
+            int rule = merge.currentRule();
+            int hits = 0;
+            while (!merge.isEmpty() && merge.currentRule() == rule) {
+                // a rule with an empty premise matches without any hits
+                if (merge.currentList() != emptyList) {
+                    hits += 1;
+                    read += 1;
+                }
+                merge.advance();
+            }
+            if (hits == premiseSizes.get(rule) && !visitor.test(rule))
+                break;
+        }
+        return read;
+    }
+
+    /**
+     * @return The amount of rules that matchingRules visits for the given items, a rule is counted once for every
+     * given item in its premise
+     */
+    int postingCount(int[] items) {
+        int count = 0;
+        for (int item : distinct(items)) {
+            count += postingsEnd(item) - postingsStart(item);
+        }
+        return count;
+    }
+
+    static int[] distinct(int[] items) {
+        int[] sorted = items.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1])
+                sorted[count++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    private int postingsStart(int item) {
+        if (item == RuleStore.UNKNOWN_ITEM || item < 0 || item >= postingOffsets.capacity() - 1)
+            return 0;
+        return postingOffsets.get(item);
+    }
+
+    private int postingsEnd(int item) {
+        if (item == RuleStore.UNKNOWN_ITEM)
+            return unknownPostings.capacity();
+        if (item < 0 || item >= postingOffsets.capacity() - 1)
+            return 0;
+        return postingOffsets.get(item + 1);
+    }
+
+    /**
+     * @return The amount of items that appear in the premise of at least one rule
+     */
+    int getIndexedItems() {
+        int indexed = unknownPostings.capacity() == 0 ? 0 : 1;
+        for (int item = 0; item < postingOffsets.capacity() - 1; item++) {
+            if (postingOffsets.get(item + 1) > postingOffsets.get(item))
+                indexed += 1;
+        }
+        return indexed;
+    }
+
+    /**
+     * @return The total amount of entries in all posting lists
+     */
+    long getTotalPostings() {
+        return postingRules.capacity() + unknownPostings.capacity();
+    }
+
+    /**
+     * The columns of the index, in the order in which they are written to a binary rule file.
+     */
+    IntBuffer[] columns() {
+        return new IntBuffer[]{postingOffsets, postingRules, unknownPostings, emptyPremises, premiseSizes};
+    }
+
+    /**
+     * @return An estimate of the memory used by the index in bytes, on the heap or in the page cache if it is mapped
+     */
+    long estimateMemory() {
+        long memory = 0;
+        for (IntBuffer column : columns()) {
+            // 16 bytes of header per array, 4 bytes per entry
+            memory += 16 + 4L * column.capacity();
+        }
+        return memory;
+    }
+}
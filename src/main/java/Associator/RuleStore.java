@@ -0,0 +1,256 @@
+package Associator;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A compact store for loaded association rules. Instead of one object with two lists of boxed integers per rule, the
+ * premises and consequences of all rules are kept in two shared int columns, with an offset table per column that marks
+ * where each rule starts (compressed sparse row layout). The supports are kept in one int column each.
+ * The items of rule i are premiseItems[premiseOffsets[i]] up to premiseItems[premiseOffsets[i + 1]].
+ * The columns are IntBuffers so that they can either be backed by int arrays on the heap, when the rules are added one
+ * by one, or by a memory mapped binary rule file, see BinaryRuleFile. Only absolute gets are used to read them, which
+ * makes reading safe from several threads at once.
+ */
+class RuleStore {
+
+    /**
+     * Stored in place of an item that could not be converted to an integer.
+     */
+    static final int UNKNOWN_ITEM = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int ruleCount;
+    private IntBuffer premiseOffsets;
+    private IntBuffer premiseItems;
+    private IntBuffer consequenceOffsets;
+    private IntBuffer consequenceItems;
+    private IntBuffer premiseSupports;
+    private IntBuffer consequenceSupports;
+    private IntBuffer totalSupports;
+
+    /**
+     * Creates an empty store on the heap, to which rules can be added.
+     */
+    RuleStore() {
+        ruleCount = 0;
+        premiseOffsets = IntBuffer.allocate(INITIAL_CAPACITY + 1);
+        premiseItems = IntBuffer.allocate(INITIAL_CAPACITY);
+        consequenceOffsets = IntBuffer.allocate(INITIAL_CAPACITY + 1);
+        consequenceItems = IntBuffer.allocate(INITIAL_CAPACITY);
+        premiseSupports = IntBuffer.allocate(INITIAL_CAPACITY);
+        consequenceSupports = IntBuffer.allocate(INITIAL_CAPACITY);
+        totalSupports = IntBuffer.allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a read-only store over existing columns, for example columns that are mapped from a file.
+     */
+    RuleStore(int ruleCount, IntBuffer premiseOffsets, IntBuffer premiseItems, IntBuffer consequenceOffsets,
+              IntBuffer consequenceItems, IntBuffer premiseSupports, IntBuffer consequenceSupports, IntBuffer totalSupports) {
+        this.ruleCount = ruleCount;
+        this.premiseOffsets = premiseOffsets;
+        this.premiseItems = premiseItems;
+        this.consequenceOffsets = consequenceOffsets;
+        this.consequenceItems = consequenceItems;
+        this.premiseSupports = premiseSupports;
+        this.consequenceSupports = consequenceSupports;
+        this.totalSupports = totalSupports;
+    }
+
+    /**
+     * Appends a rule to the store. The given arrays are copied, so they can be reused by the caller.
+     *
+     * @param premise            The items of the premise, only the first premiseLength are used
+     * @param premiseLength      The amount of items in the premise
+     * @param consequence        The items of the consequence, only the first consequenceLength are used
+     * @param consequenceLength  The amount of items in the consequence
+     * @param premiseSupport     The support of the premise
+     * @param consequenceSupport The support of the consequence
+     * @param totalSupport       The support of the whole rule
+     */
+    void addRule(int[] premise, int premiseLength, int[] consequence, int consequenceLength,
+                 int premiseSupport, int consequenceSupport, int totalSupport) {
+        if (ruleCount == premiseSupports.capacity()) {
+            int capacity = ruleCount * 2;
+            premiseOffsets = ensureCapacity(premiseOffsets, capacity + 1);
+            consequenceOffsets = ensureCapacity(consequenceOffsets, capacity + 1);
+            premiseSupports = ensureCapacity(premiseSupports, capacity);
+            consequenceSupports = ensureCapacity(consequenceSupports, capacity);
+            totalSupports = ensureCapacity(totalSupports, capacity);
+        }
+        int premiseStart = premiseOffsets.get(ruleCount);
+        premiseItems = ensureCapacity(premiseItems, premiseStart + premiseLength);
+        System.arraycopy(premise, 0, premiseItems.array(), premiseStart, premiseLength);
+        premiseOffsets.put(ruleCount + 1, premiseStart + premiseLength);
+
+        int consequenceStart = consequenceOffsets.get(ruleCount);
+        consequenceItems = ensureCapacity(consequenceItems, consequenceStart + consequenceLength);
+        System.arraycopy(consequence, 0, consequenceItems.array(), consequenceStart, consequenceLength);
+        consequenceOffsets.put(ruleCount + 1, consequenceStart + consequenceLength);
+
+        premiseSupports.put(ruleCount, premiseSupport);
+        consequenceSupports.put(ruleCount, consequenceSupport);
+        totalSupports.put(ruleCount, totalSupport);
+        ruleCount += 1;
+    }
+
+    private static IntBuffer ensureCapacity(IntBuffer buffer, int needed) {
+        if (needed <= buffer.capacity())
+            return buffer;
+        return IntBuffer.wrap(Arrays.copyOf(buffer.array(), Math.max(needed, buffer.capacity() * 2)));
+    }
+
+    /**
+     * Shrinks all columns to the amount of stored rules, to be called once all rules are added.
+     * Columns that are not on the heap are left as they are.
+     */
+    void trim() {
+        premiseOffsets = trim(premiseOffsets, ruleCount + 1);
+        consequenceOffsets = trim(consequenceOffsets, ruleCount + 1);
+        premiseItems = trim(premiseItems, premiseOffsets.get(ruleCount));
+        consequenceItems = trim(consequenceItems, consequenceOffsets.get(ruleCount));
+        premiseSupports = trim(premiseSupports, ruleCount);
+        consequenceSupports = trim(consequenceSupports, ruleCount);
+        totalSupports = trim(totalSupports, ruleCount);
+    }
+
+    private static IntBuffer trim(IntBuffer buffer, int size) {
+        if (!buffer.hasArray() || buffer.capacity() == size)
+            return buffer;
+        return IntBuffer.wrap(Arrays.copyOf(buffer.array(), size));
+    }
+
+    /**
+     * @return Whether the rules are ordered from the highest to the lowest total support
+     */
+    boolean isSortedByTotalSupport() {
+        for (int rule = 1; rule < ruleCount; rule++) {
+            if (totalSupports.get(rule) > totalSupports.get(rule - 1))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Orders the rules from the highest to the lowest total support. The sort is stable, so rules with the same total
+     * support keep the order in which they were added. Each rule is sorted as one long, the inverted support in the high
+     * bits and the rule index in the low bits, so no boxed comparator is needed.
+     *
+     * @return This store if it is already sorted, otherwise a sorted copy on the heap
+     */
+    RuleStore sortedByTotalSupport() {
+        if (isSortedByTotalSupport())
+            return this;
+        long[] order = new long[ruleCount];
+        for (int rule = 0; rule < ruleCount; rule++) {
+            order[rule] = ((long) (Integer.MAX_VALUE - totalSupports.get(rule)) << 32) | rule;
+        }
+        Arrays.sort(order);
+        RuleStore sorted = new RuleStore();
+        int[] premise = new int[INITIAL_CAPACITY];
+        int[] consequence = new int[INITIAL_CAPACITY];
+        for (long entry : order) {
+            int rule = (int) entry;
+            int premiseLength = premiseEnd(rule) - premiseStart(rule);
+            int consequenceLength = consequenceEnd(rule) - consequenceStart(rule);
+            premise = copyItems(premiseItems, premiseStart(rule), premiseLength, premise);
+            consequence = copyItems(consequenceItems, consequenceStart(rule), consequenceLength, consequence);
+            sorted.addRule(premise, premiseLength, consequence, consequenceLength,
+                    premiseSupports.get(rule), consequenceSupports.get(rule), totalSupports.get(rule));
+        }
+        sorted.trim();
+        return sorted;
+    }
+
+    private static int[] copyItems(IntBuffer items, int start, int length, int[] target) {
+        if (target.length < length)
+            target = new int[length];
+        for (int i = 0; i < length; i++) {
+            target[i] = items.get(start + i);
+        }
+        return target;
+    }
+
+    int size() {
+        return ruleCount;
+    }
+
+    int premiseStart(int rule) {
+        return premiseOffsets.get(rule);
+    }
+
+    int premiseEnd(int rule) {
+        return premiseOffsets.get(rule + 1);
+    }
+
+    int premiseItem(int position) {
+        return premiseItems.get(position);
+    }
+
+    int consequenceStart(int rule) {
+        return consequenceOffsets.get(rule);
+    }
+
+    int consequenceEnd(int rule) {
+        return consequenceOffsets.get(rule + 1);
+    }
+
+    int consequenceItem(int position) {
+        return consequenceItems.get(position);
+    }
+
+    int getPremiseSupport(int rule) {
+        return premiseSupports.get(rule);
+    }
+
+    int getConsequenceSupport(int rule) {
+        return consequenceSupports.get(rule);
+    }
+
+    int getTotalSupport(int rule) {
+        return totalSupports.get(rule);
+    }
+
+    /**
+     * @return The amount of items in both the premise and the consequence of the rule
+     */
+    int ruleLength(int rule) {
+        return premiseEnd(rule) - premiseStart(rule) + consequenceEnd(rule) - consequenceStart(rule);
+    }
+
+    /**
+     * The columns of the store, in the order in which they are written to a binary rule file.
+     */
+    IntBuffer[] columns() {
+        return new IntBuffer[]{premiseOffsets, premiseItems, consequenceOffsets, consequenceItems,
+                premiseSupports, consequenceSupports, totalSupports};
+    }
+
+    /**
+     * @return Whether the columns are memory mapped from a file instead of being on the heap
+     */
+    boolean isMapped() {
+        return premiseOffsets.isDirect();
+    }
+
+    /**
+     * @return An estimate of the memory used by the store in bytes, on the heap or in the page cache if it is mapped
+     */
+    long estimateMemory() {
+        long memory = 0;
+        for (IntBuffer column : columns()) {
+            // 16 bytes of header per array, 4 bytes per entry
+            memory += 16 + 4L * column.capacity();
+        }
+        return memory;
+    }
+
+    /**
+     * @return The average amount of bytes used per stored rule
+     */
+    double bytesPerRule() {
+        return ruleCount == 0 ? 0 : estimateMemory() / (double) ruleCount;
+    }
+}
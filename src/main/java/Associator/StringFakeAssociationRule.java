@@ -5,7 +5,7 @@ import java.util.List;
 /**
  * A class for AssociationRules that use Strings instead of Items
  */
-class StringFakeAssociationRule {
+public class StringFakeAssociationRule {
 
     private List<String> premise;
     private List<String> consequence;
@@ -21,7 +21,7 @@ class StringFakeAssociationRule {
         setTotalSupport(totalSupport);
     }
 
-    List<String> getPremise() {
+    public List<String> getPremise() {
         return premise;
     }
 
@@ -29,7 +29,7 @@ class StringFakeAssociationRule {
         this.premise = premise;
     }
 
-    List<String> getConsequence() {
+    public List<String> getConsequence() {
         return consequence;
     }
 
@@ -37,7 +37,7 @@ class StringFakeAssociationRule {
         this.consequence = consequence;
     }
 
-    int getPremiseSupport() {
+    public int getPremiseSupport() {
         return premiseSupport;
     }
 
@@ -45,7 +45,7 @@ class StringFakeAssociationRule {
         this.premiseSupport = premiseSupport;
     }
 
-    int getConsequenceSupport() {
+    public int getConsequenceSupport() {
         return consequenceSupport;
     }
 
@@ -53,7 +53,7 @@ class StringFakeAssociationRule {
         this.consequenceSupport = consequenceSupport;
     }
 
-    int getTotalSupport() {
+    public int getTotalSupport() {
         return totalSupport;
     }
 
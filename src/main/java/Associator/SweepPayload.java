@@ -0,0 +1,124 @@
+package Associator;
+
+import Main.Algorithm;
+import Main.DatasetSnapshot;
+
+import java.util.List;
+
+/**
+ * The expected json format for a request to build a model for each of several sets of options at once, to compare
+ * them. It is the same as a BuildModelPayload, except that it contains a list of option sets instead of one set of
+ * options. All models are built from the same data with the same algorithm and method of storage, and are
+ * cross-validated with the same amount of folds. Out of core, the runs share the memory-mapped data.
+ */
+public class SweepPayload {
+
+    private List<String[]> optionSets;
+    private Algorithm algorithm;
+    private String method;
+    private String snapshot;
+    private boolean async;
+    private int folds;
+    private boolean outOfCore;
+
+    public List<String[]> getOptionSets() {
+        return optionSets;
+    }
+
+    public void setOptionSets(List<String[]> optionSets) {
+        this.optionSets = optionSets;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    public String getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(String snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public int getFolds() {
+        return folds;
+    }
+
+    public void setFolds(int folds) {
+        this.folds = folds;
+    }
+
+    public boolean isOutOfCore() {
+        return outOfCore;
+    }
+
+    public void setOutOfCore(boolean outOfCore) {
+        this.outOfCore = outOfCore;
+    }
+
+    /**
+     * @param options The options of one run, or null for a payload that is only used to get the data
+     * @return A payload to build the model of one run with
+     */
+    public BuildModelPayload toBuildModelPayload(String[] options) {
+        BuildModelPayload payload = new BuildModelPayload();
+        payload.setAlgorithm(algorithm);
+        payload.setMethod(method);
+        payload.setSnapshot(snapshot);
+        payload.setFolds(folds);
+        payload.setOutOfCore(outOfCore);
+        // weka's setOptions empties the options it has read, so every run gets its own copy
+        payload.setOptions(options == null ? null : options.clone());
+        return payload;
+    }
+
+    /**
+     * Checks whether the received payload is valid
+     *
+     * @return True is valid, false if not valid
+     */
+    public boolean isValid() {
+        if (algorithm == null || optionSets == null || optionSets.isEmpty())
+            return false;
+        for (String[] options : optionSets) {
+            if (options == null)
+                return false;
+        }
+        if (!algorithm.isClassifier() && method == null)
+            return false;
+        if (folds != 0 && (folds < 2 || !algorithm.isClassifier()))
+            return false;
+        if (outOfCore && !algorithm.isClassifier())
+            return false;
+        return DatasetSnapshot.isValidMode(snapshot);
+    }
+
+    /**
+     * Inserts default values where null values are received.
+     */
+    public void insertDefaults() {
+        if (algorithm == null)
+            setAlgorithm(Algorithm.FPGROWTH);
+    }
+}
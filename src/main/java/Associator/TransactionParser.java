@@ -0,0 +1,136 @@
+package Associator;
+
+import weka.core.BinarySparseInstance;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Converts the rows of the data query, strings of comma-separated items, into sparse instances for weka.
+ * The items are looked up straight from the characters of the row in an open addressing table, so no substrings,
+ * arrays of tokens or boxed integers are created per item, and the indices are collected in a buffer that is reused for
+ * every row. Only the sorted indices that are given to weka are allocated per row, since weka keeps that array.
+ * Items that are not one of the attributes are skipped and counted instead of failing the whole build.
+ */
+class TransactionParser {
+
+    private static final int NOT_FOUND = -1;
+
+    private final String[] keys;
+    private final int[] values;
+    private final int mask;
+    private final int attributeCount;
+    private int[] buffer = new int[64];
+    private long rows = 0;
+    private long items = 0;
+    private long unknownItems = 0;
+
+    /**
+     * @param attributes The attributes of the data, the position of an attribute is its index in the sparse vector
+     */
+    TransactionParser(List<String> attributes) {
+        int capacity = Integer.highestOneBit(Math.max(2, attributes.size()) * 2 - 1) << 1;
+        keys = new String[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        attributeCount = attributes.size();
+        for (int i = 0; i < attributes.size(); i++) {
+            String attribute = attributes.get(i);
+            int slot = attribute.hashCode() & mask;
+            while (keys[slot] != null && !keys[slot].equals(attribute)) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == null) {
+                keys[slot] = attribute;
+                values[slot] = i;
+            }
+        }
+    }
+
+    /**
+     * Converts a row into an instance that can be used by weka, for example: [a,z,f] with the alphabet as attributes -> [1000010..01]
+     *
+     * @param row A string consisting of comma-separated items
+     * @return A new instance for weka, with the indices of the known items in ascending order and without duplicates
+     */
+    BinarySparseInstance toInstance(String row) {
+        int distinct = parse(row);
+        return new BinarySparseInstance(1, Arrays.copyOf(buffer, distinct), attributeCount);
+    }
+
+    /**
+     * Parses a row into the buffer of this parser, see getParsedItems.
+     *
+     * @param row A string consisting of comma-separated items
+     * @return The amount of distinct known items in the row
+     */
+    int parse(String row) {
+        int count = 0;
+        int start = 0;
+        while (start <= row.length()) {
+            int end = row.indexOf(',', start);
+            if (end < 0)
+                end = row.length();
+            if (end > start) {
+                items += 1;
+                int index = lookup(row, start, end);
+                if (index == NOT_FOUND) {
+                    unknownItems += 1;
+                } else {
+                    if (count == buffer.length)
+                        buffer = Arrays.copyOf(buffer, count * 2);
+                    buffer[count++] = index;
+                }
+            }
+            start = end + 1;
+        }
+        rows += 1;
+        // weka finds the values of a sparse instance with a binary search over its indices
+        Arrays.sort(buffer, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || buffer[i] != buffer[i - 1])
+                buffer[distinct++] = buffer[i];
+        }
+        return distinct;
+    }
+
+    /**
+     * @return The indices of the items of the last parsed row in ascending order, only the amount returned by parse are
+     * valid. The buffer is reused for the next row
+     */
+    int[] getParsedItems() {
+        return buffer;
+    }
+
+    /**
+     * Finds the index of the item between start and end in the row. The hash is the same as String.hashCode of the item.
+     */
+    private int lookup(String row, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + row.charAt(i);
+        }
+        int length = end - start;
+        int slot = hash & mask;
+        while (keys[slot] != null) {
+            String key = keys[slot];
+            if (key.length() == length && row.regionMatches(start, key, 0, length))
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    long getRows() {
+        return rows;
+    }
+
+    long getItems() {
+        return items;
+    }
+
+    long getUnknownItems() {
+        return unknownItems;
+    }
+}
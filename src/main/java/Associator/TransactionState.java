@@ -0,0 +1,227 @@
+package Associator;
+
+import weka.core.BinarySparseInstance;
+import weka.core.Instances;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The integer encoded transactions that a model was built from, kept next to the model so it can be updated with only
+ * the transactions that were added or removed since, instead of querying and parsing all data again. Every distinct
+ * transaction is stored once with the amount of times it occurs, together with the attributes the items refer to.
+ * Mining these weighted transactions finds the same rules as mining all rows of a full build, and the attributes are
+ * kept so an update uses the same item numbering as the build it starts from.
+ * <p>
+ * Layout of the file, gzipped and big endian: magic, version, the amount of attributes, every attribute as UTF, the
+ * amount of distinct transactions, then per transaction its count, its length and its items.
+ */
+class TransactionState {
+
+    private static final int MAGIC = 0x52345453;
+    private static final int VERSION = 1;
+
+    private final List<String> attributes;
+    /**
+     * Every distinct transaction, in the order in which it was first added. A transaction is its own key, so the count
+     * of an existing transaction can be changed without a second lookup.
+     */
+    private final LinkedHashMap<Transaction, Transaction> transactions = new LinkedHashMap<>();
+    private int transactionCount = 0;
+
+    /**
+     * @param attributes The attributes of the data, every item of a transaction is the index of one of them
+     */
+    TransactionState(List<String> attributes) {
+        this.attributes = attributes;
+    }
+
+    /**
+     * @return The file in which the transactions of a model are kept
+     */
+    static File fileOf(String uuid) {
+        return new File("/data/" + uuid + ".transactions");
+    }
+
+    List<String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return The amount of transactions, counting every occurrence
+     */
+    int getTransactionCount() {
+        return transactionCount;
+    }
+
+    /**
+     * @return The amount of distinct transactions
+     */
+    int getDistinctCount() {
+        return transactions.size();
+    }
+
+    /**
+     * Adds a transaction a number of times, or removes it if the count is negative. The given array is copied if the
+     * transaction is new, so it can be reused by the caller.
+     *
+     * @param items  The indices of the attributes in the transaction in ascending order and without duplicates, as
+     *               given by TransactionParser.parse. Only the first length are used
+     * @param length The amount of items in the transaction
+     * @param count  The amount of times to add the transaction, negative to remove it
+     * @throws IllegalArgumentException The transaction is removed more often than it occurs
+     */
+    void add(int[] items, int length, int count) throws IllegalArgumentException {
+        Transaction transaction = transactions.get(new Transaction(items, length));
+        if (transaction == null) {
+            if (count < 0)
+                throw new IllegalArgumentException("A removed transaction is not in the data of the model");
+            if (count == 0)
+                return;
+            transaction = new Transaction(Arrays.copyOf(items, length), length);
+            transactions.put(transaction, transaction);
+        } else if (transaction.count + count < 0) {
+            throw new IllegalArgumentException("A transaction is removed more often than it is in the data of the model");
+        }
+        transaction.count += count;
+        transactionCount += count;
+        if (transaction.count == 0)
+            transactions.remove(transaction);
+    }
+
+    /**
+     * Gives every distinct transaction to the FP-Growth, weighted with the amount of times it occurs.
+     */
+    void addTo(ParallelFPGrowth parallelFPGrowth) {
+        for (Transaction transaction : transactions.keySet()) {
+            parallelFPGrowth.addTransaction(transaction.items, transaction.length, transaction.count);
+        }
+    }
+
+    /**
+     * Adds every transaction to the instances as often as it occurs, for the weka algorithms that have no weights.
+     */
+    void addTo(Instances instances) {
+        for (Transaction transaction : transactions.keySet()) {
+            BinarySparseInstance instance = new BinarySparseInstance(1, transaction.items, attributes.size());
+            for (int i = 0; i < transaction.count; i++) {
+                instances.add(instance);
+            }
+        }
+    }
+
+    /**
+     * Writes the transactions to a file. The file is first written to a uniquely named file next to the target and then
+     * moved in place, so an update never reads a half written file.
+     *
+     * @throws IOException Could not write the file
+     */
+    void write(File file) throws IOException {
+        File temporaryFile = File.createTempFile("." + file.getName() + "-", ".tmp", file.getAbsoluteFile().getParentFile());
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temporaryFile))))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(attributes.size());
+            for (String attribute : attributes) {
+                output.writeUTF(attribute);
+            }
+            output.writeInt(transactions.size());
+            for (Transaction transaction : transactions.keySet()) {
+                output.writeInt(transaction.count);
+                output.writeInt(transaction.length);
+                for (int i = 0; i < transaction.length; i++) {
+                    output.writeInt(transaction.items[i]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw e;
+        }
+        try {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the transactions of a model from a file.
+     *
+     * @throws IOException Could not read the file, or it is not a transaction file of a supported version
+     */
+    static TransactionState read(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (input.readInt() != MAGIC)
+                throw new IOException(file + " is not a transaction file");
+            int version = input.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported transaction file version " + version);
+            int attributeCount = input.readInt();
+            List<String> attributes = new ArrayList<>(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                attributes.add(input.readUTF());
+            }
+            TransactionState state = new TransactionState(attributes);
+            int distinctCount = input.readInt();
+            int[] items = new int[16];
+            for (int transaction = 0; transaction < distinctCount; transaction++) {
+                int count = input.readInt();
+                int length = input.readInt();
+                if (items.length < length)
+                    items = new int[length];
+                for (int i = 0; i < length; i++) {
+                    items[i] = input.readInt();
+                }
+                state.add(items, length, count);
+            }
+            return state;
+        }
+    }
+
+    /**
+     * The sorted items of a transaction and the amount of times it occurs. The count is not part of the key.
+     */
+    private static final class Transaction {
+        private final int[] items;
+        private final int length;
+        private final int hash;
+        private int count = 0;
+
+        Transaction(int[] items, int length) {
+            this.items = items;
+            this.length = length;
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + items[i];
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Transaction))
+                return false;
+            Transaction other = (Transaction) object;
+            if (other.length != length || other.hash != hash)
+                return false;
+            for (int i = 0; i < length; i++) {
+                if (items[i] != other.items[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package Associator;
+
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes a large amount of statements to a triplestore. The statements are collected in batches of
+ * TRIPLESTORE_BATCH_SIZE statements (10000 by default) on the thread that adds them, while TRIPLESTORE_WRITERS writers
+ * (4 by default) send the finished batches at the same time, each over its own connection. Every batch is sent in its
+ * own transaction, which a SPARQL repository sends as one INSERT DATA update. A batch that fails is retried up to
+ * TRIPLESTORE_RETRIES times (3 by default) before the whole write fails.
+ */
+class TripleStoreBulkWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TripleStoreBulkWriter.class);
+
+    /**
+     * Tells a writer that there are no more batches.
+     */
+    private static final List<Statement> END = new ArrayList<>();
+    private static final long RETRY_DELAY_MS = 200;
+
+    private final Repository repo;
+    private final Resource context;
+    private final int batchSize;
+    private final int writerCount;
+    private final int retries;
+    private final BlockingQueue<List<Statement>> batches;
+    private final AtomicLong writtenStatements = new AtomicLong();
+    private ExecutorService executor;
+    private final List<Future<?>> writers = new ArrayList<>();
+    private List<Statement> currentBatch;
+    private volatile Exception failure;
+    private long startTime;
+    private long endTime;
+
+    TripleStoreBulkWriter(Repository repo, Resource context, int batchSize, int writerCount, int retries) {
+        this.repo = repo;
+        this.context = context;
+        this.batchSize = batchSize;
+        this.writerCount = writerCount;
+        this.retries = retries;
+        // a few batches can wait, so the writers never have to wait for the next batch to be built
+        batches = new ArrayBlockingQueue<>(writerCount * 2);
+        currentBatch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Creates a writer with the settings of the TRIPLESTORE_BATCH_SIZE, TRIPLESTORE_WRITERS and TRIPLESTORE_RETRIES environmental variables.
+     */
+    static TripleStoreBulkWriter fromEnvironment(Repository repo, Resource context) {
+        return new TripleStoreBulkWriter(repo, context, intFromEnvironment("TRIPLESTORE_BATCH_SIZE", 10000, 1),
+                intFromEnvironment("TRIPLESTORE_WRITERS", 4, 1), intFromEnvironment("TRIPLESTORE_RETRIES", 3, 0));
+    }
+
+    private static int intFromEnvironment(String name, int defaultValue, int minimum) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty())
+            return defaultValue;
+        return Math.max(minimum, Integer.parseInt(value.trim()));
+    }
+
+    /**
+     * Starts the writers, to be called before the first statement is added.
+     */
+    void start() {
+        startTime = System.currentTimeMillis();
+        executor = Executors.newFixedThreadPool(writerCount, runnable -> {
+            Thread thread = new Thread(runnable, "triplestore-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < writerCount; i++) {
+            writers.add(executor.submit(this::write));
+        }
+    }
+
+    /**
+     * Adds a statement to the current batch, and hands the batch to the writers once it is full.
+     * If all writers are busy and enough batches are waiting, this waits for a writer to finish a batch.
+     *
+     * @throws RepositoryException A batch could not be written, no more statements are accepted
+     */
+    void add(Statement statement) throws RepositoryException {
+        currentBatch.add(statement);
+        if (currentBatch.size() >= batchSize) {
+            hand(currentBatch);
+            currentBatch = new ArrayList<>(batchSize);
+        }
+    }
+
+    private void hand(List<Statement> batch) throws RepositoryException {
+        try {
+            while (!batches.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                throwIfFailed();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException(e);
+        }
+    }
+
+    private void throwIfFailed() throws RepositoryException {
+        if (failure != null)
+            throw new RepositoryException("Could not write a batch to the triplestore", failure);
+    }
+
+    /**
+     * Sends the last batch and waits until every batch is written.
+     *
+     * @throws RepositoryException A batch could not be written, even after retrying it
+     */
+    void finish() throws RepositoryException {
+        try {
+            if (failure == null) {
+                if (!currentBatch.isEmpty())
+                    hand(currentBatch);
+                for (int i = 0; i < writerCount; i++) {
+                    hand(END);
+                }
+            }
+            for (Future<?> writer : writers) {
+                try {
+                    writer.get();
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RepositoryException(e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            endTime = System.currentTimeMillis();
+        }
+        throwIfFailed();
+    }
+
+    /**
+     * The loop of a writer: takes batches until END is taken or another writer failed.
+     */
+    private void write() {
+        RepositoryConnection conn = repo.getConnection();
+        try {
+            while (failure == null) {
+                List<Statement> batch = batches.poll(100, TimeUnit.MILLISECONDS);
+                if (batch == END)
+                    return;
+                if (batch != null)
+                    conn = writeBatch(conn, batch);
+            }
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * Writes a batch in one transaction, retrying it on a new connection if it fails.
+     *
+     * @return The connection to use for the next batch
+     */
+    private RepositoryConnection writeBatch(RepositoryConnection conn, List<Statement> batch) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                conn.begin();
+                conn.add(batch, context);
+                conn.commit();
+                writtenStatements.addAndGet(batch.size());
+                return conn;
+            } catch (RepositoryException e) {
+                if (attempt >= retries)
+                    throw e;
+                LOGGER.warn("Could not write a batch of {} statements, retrying it ({} of {})", batch.size(), attempt + 1, retries, e);
+                try {
+                    if (conn.isActive())
+                        conn.rollback();
+                    conn.close();
+                } catch (RepositoryException closeException) {
+                    LOGGER.warn("Could not close the connection of a failed batch", closeException);
+                }
+                Thread.sleep(RETRY_DELAY_MS << attempt);
+                conn = repo.getConnection();
+            }
+        }
+    }
+
+    long getWrittenStatements() {
+        return writtenStatements.get();
+    }
+
+    /**
+     * @return The time in milliseconds between starting the writers and the last batch being written
+     */
+    long getWriteTime() {
+        return endTime - startTime;
+    }
+}
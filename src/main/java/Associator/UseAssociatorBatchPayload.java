@@ -0,0 +1,94 @@
+package Associator;
+
+import Main.Algorithm;
+
+import java.util.List;
+
+/**
+ * The expected json format for a request to determine the frequent items of many lists of attributes at once. It is the
+ * same as a UseAssociatorPayload, except that it contains a list of attribute lists instead of one list of attributes.
+ * All lists are calculated on the same model.
+ */
+public class UseAssociatorBatchPayload {
+
+    private List<List<String>> attributeSets;
+    private Algorithm algorithm;
+    private String identifier;
+    private String method;
+    private Integer limit;
+
+    public List<List<String>> getAttributeSets() {
+        return attributeSets;
+    }
+
+    public void setAttributeSets(List<List<String>> attributeSets) {
+        this.attributeSets = attributeSets;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public void setIdentifier(String identifier) {
+        this.identifier = identifier;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return A payload for the model of the batch without attributes, used to load the model
+     */
+    public UseAssociatorPayload toUseAssociatorPayload() {
+        UseAssociatorPayload payload = new UseAssociatorPayload();
+        payload.setAlgorithm(algorithm);
+        payload.setIdentifier(identifier);
+        payload.setMethod(method);
+        payload.setLimit(limit);
+        return payload;
+    }
+
+    /**
+     * Checks whether the received payload is valid
+     *
+     * @return True is valid, false if not valid
+     */
+    public boolean isValid() {
+        if (attributeSets == null)
+            return false;
+        for (List<String> attributes : attributeSets) {
+            if (attributes == null)
+                return false;
+        }
+        return toUseAssociatorPayload().isValid();
+    }
+
+    /**
+     * Inserts default values where null values are received.
+     */
+    public void insertDefaults() {
+        if (algorithm == null)
+            setAlgorithm(Algorithm.FPGROWTH);
+    }
+}
@@ -16,12 +16,24 @@ public class UseAssociatorPayload {
     private Algorithm algorithm;
     private String identifier;
     private String method;
+    /**
+     * The maximum amount of frequent items to return, all of them are returned when it is not given
+     */
+    private Integer limit;
+    /**
+     * Where the page of related rules starts, the next cursor of the previous page. The first page starts at 0
+     */
+    private Integer cursor;
+    /**
+     * The maximum amount of related rules per page
+     */
+    private Integer pageSize;
 
     List<String> getattributes() {
         return attributes;
     }
 
-    private void setattributes(List<String> attributes) {
+    void setattributes(List<String> attributes) {
         this.attributes = attributes;
     }
 
@@ -49,6 +61,39 @@ public class UseAssociatorPayload {
         this.method = method;
     }
 
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+
+    public Integer getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(Integer cursor) {
+        this.cursor = cursor;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(Integer pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Checks whether the cursor and the page size of the received payload are valid
+     *
+     * @return True is valid, false if not valid
+     */
+    public boolean isValidPage() {
+        return (cursor == null || cursor >= 0) && (pageSize == null || pageSize >= 1);
+    }
+
     /**
      * Checks whether the received payload is valid
      *
@@ -57,6 +102,10 @@ public class UseAssociatorPayload {
     public boolean isValid() {
         if (identifier == null || identifier.isEmpty())
             return false;
+        if (limit != null && limit < 1)
+            return false;
+        if (!isValidPage())
+            return false;
         Algorithm[] values = Algorithm.values();
         for (Algorithm value : values) {
             if (value == this.algorithm)
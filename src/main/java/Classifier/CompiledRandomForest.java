@@ -0,0 +1,113 @@
+package Classifier;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.IteratedSingleClassifierEnhancer;
+import weka.classifiers.meta.Bagging;
+import weka.classifiers.trees.RandomForest;
+import weka.classifiers.trees.RandomTree;
+import weka.core.Utils;
+
+import java.lang.reflect.Field;
+import java.util.stream.IntStream;
+
+/**
+ * A RandomForest of which every tree is a CompiledRandomTree. Like weka's Bagging it adds up the distributions of the
+ * trees in the order of the trees and normalizes the sum, so it gives the same distributions as weka.
+ * The trees are read from the fields of weka's Bagging, a forest that can not be read this way is not compiled.
+ */
+class CompiledRandomForest {
+
+    private final CompiledRandomTree[] trees;
+    private final int numClasses;
+
+    private CompiledRandomForest(CompiledRandomTree[] trees, int numClasses) {
+        this.trees = trees;
+        this.numClasses = numClasses;
+    }
+
+    /**
+     * Compiles every tree of a RandomForest.
+     *
+     * @param forest     A built RandomForest with a nominal class
+     * @param numClasses The amount of classes of the data the forest was built from
+     * @return The compiled forest
+     * @throws Exception The forest can not be compiled, for example because its class is numeric or one of its trees
+     *                   can not be compiled
+     */
+    static CompiledRandomForest compile(RandomForest forest, int numClasses) throws Exception {
+        if ((boolean) field(Bagging.class, "m_Numeric").get(forest))
+            throw new IllegalArgumentException("Only a forest with a nominal class can be compiled");
+        Classifier[] classifiers = (Classifier[]) field(IteratedSingleClassifierEnhancer.class, "m_Classifiers").get(forest);
+        if (classifiers == null)
+            throw new IllegalArgumentException("The forest is not built");
+        CompiledRandomTree[] trees = new CompiledRandomTree[classifiers.length];
+        for (int i = 0; i < classifiers.length; i++) {
+            if (!(classifiers[i] instanceof RandomTree))
+                throw new IllegalArgumentException("Tree " + i + " of the forest is not a RandomTree");
+            trees[i] = CompiledRandomTree.compile((RandomTree) classifiers[i]);
+        }
+        return new CompiledRandomForest(trees, numClasses);
+    }
+
+    private static Field field(Class<?> owner, String name) throws NoSuchFieldException {
+        Field field = owner.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    /**
+     * Calculates the probability of each class for an example, scoring the trees one after the other. Used when there
+     * are enough examples to keep every thread busy with examples of its own.
+     *
+     * @param values The values of the example, one for each attribute, NaN for a missing value
+     * @return The distribution of the probability that the example belongs to a certain class
+     */
+    double[] distributionForValues(double[] values) {
+        double[] sums = new double[numClasses];
+        for (CompiledRandomTree tree : trees) {
+            add(sums, tree.distributionForValues(values));
+        }
+        return normalize(sums);
+    }
+
+    /**
+     * Calculates the same distribution as distributionForValues, but scores the trees in parallel on the common fork join
+     * pool. Used for batches of fewer examples than there are threads, where scoring the examples in parallel would
+     * leave threads idle. The distributions of the trees are still added up in the order of the trees.
+     */
+    double[] distributionForValuesParallel(double[] values) {
+        double[][] treeDistributions = new double[trees.length][];
+        IntStream.range(0, trees.length).parallel()
+                .forEach(i -> treeDistributions[i] = trees[i].distributionForValues(values));
+        double[] sums = new double[numClasses];
+        for (double[] distribution : treeDistributions) {
+            add(sums, distribution);
+        }
+        return normalize(sums);
+    }
+
+    private static void add(double[] sums, double[] distribution) {
+        if (distribution == null)
+            throw new IllegalStateException("A tree of the forest could not classify the example");
+        for (int j = 0; j < distribution.length; j++) {
+            sums[j] += distribution[j];
+        }
+    }
+
+    private static double[] normalize(double[] sums) {
+        if (!Utils.eq(Utils.sum(sums), 0))
+            Utils.normalize(sums);
+        return sums;
+    }
+
+    /**
+     * @return An estimate of the memory used by the arrays of all trees in bytes
+     */
+    long estimateMemory() {
+        long memory = 16 + 8L * trees.length;
+        for (CompiledRandomTree tree : trees) {
+            memory += tree.estimateMemory();
+        }
+        return memory;
+    }
+}
@@ -0,0 +1,210 @@
+package Classifier;
+
+import weka.classifiers.trees.RandomTree;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A RandomTree converted into flat arrays, so an example can be scored straight from its values without weka instances.
+ * Node 0 is the root, the children of a node are stored next to each other starting at firstChild. The class
+ * distributions of the nodes are normalized once when compiling instead of for every example.
+ * It follows the steps of RandomTree.distributionForInstance exactly, so it gives the same distributions as weka.
+ * The tree is read from the fields of weka's RandomTree, a tree that can not be read this way is not compiled.
+ */
+class CompiledRandomTree {
+
+    /**
+     * The attribute a node splits on, -1 for a leaf
+     */
+    private final int[] attributes;
+    /**
+     * Whether the attribute a node splits on is nominal, in which case the value of the attribute is the child to go to
+     */
+    private final boolean[] nominal;
+    /**
+     * The value at which a numeric split goes to the second child instead of the first
+     */
+    private final double[] splitPoints;
+    private final int[] firstChild;
+    private final int[] childCounts;
+    /**
+     * The proportion of the training data that went to each child, indexed like the children. Used for missing values
+     */
+    private final double[] proportions;
+    /**
+     * The normalized distribution of each node, or what weka returns for an empty node
+     */
+    private final double[][] distributions;
+    private final int numClasses;
+
+    private CompiledRandomTree(int nodeCount, int numClasses) {
+        attributes = new int[nodeCount];
+        nominal = new boolean[nodeCount];
+        splitPoints = new double[nodeCount];
+        firstChild = new int[nodeCount];
+        childCounts = new int[nodeCount];
+        proportions = new double[nodeCount];
+        distributions = new double[nodeCount][];
+        this.numClasses = numClasses;
+    }
+
+    /**
+     * Compiles a RandomTree.
+     *
+     * @param tree A built RandomTree
+     * @return The compiled tree
+     * @throws Exception The tree can not be compiled, for example because it was built without attributes or a node
+     *                   has a distribution that can not be normalized
+     */
+    static CompiledRandomTree compile(RandomTree tree) throws Exception {
+        if (field(RandomTree.class, "m_zeroR").get(tree) != null)
+            throw new IllegalArgumentException("The tree was built without attributes");
+        Object root = field(RandomTree.class, "m_Tree").get(tree);
+        Instances info = (Instances) field(RandomTree.class, "m_Info").get(tree);
+        if (root == null || info == null)
+            throw new IllegalArgumentException("The tree is not built");
+        Class<?> nodeClass = root.getClass();
+        Field successorsField = field(nodeClass, "m_Successors");
+        Field attributeField = field(nodeClass, "m_Attribute");
+        Field splitPointField = field(nodeClass, "m_SplitPoint");
+        Field propField = field(nodeClass, "m_Prop");
+        Field classDistributionField = field(nodeClass, "m_ClassDistribution");
+
+        // number the nodes breadth first, so the children of a node get consecutive numbers
+        List<Object> nodes = new ArrayList<>();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++) {
+            Object[] successors = (Object[]) successorsField.get(nodes.get(i));
+            if (successors != null && attributeField.getInt(nodes.get(i)) > -1) {
+                for (Object successor : successors) {
+                    nodes.add(successor);
+                }
+            }
+        }
+
+        boolean nominalClass = info.classAttribute().isNominal();
+        double[] unclassified = null;
+        if (tree.getAllowUnclassifiedInstances()) {
+            unclassified = new double[info.numClasses()];
+            if (info.classAttribute().isNumeric())
+                unclassified[0] = Utils.missingValue();
+        }
+        CompiledRandomTree compiled = new CompiledRandomTree(nodes.size(), info.numClasses());
+        int nextChild = 1;
+        for (int i = 0; i < nodes.size(); i++) {
+            Object node = nodes.get(i);
+            int attribute = attributeField.getInt(node);
+            compiled.attributes[i] = attribute;
+            if (attribute > -1) {
+                Object[] successors = (Object[]) successorsField.get(node);
+                double[] prop = (double[]) propField.get(node);
+                compiled.nominal[i] = info.attribute(attribute).isNominal();
+                compiled.splitPoints[i] = splitPointField.getDouble(node);
+                compiled.firstChild[i] = nextChild;
+                compiled.childCounts[i] = successors.length;
+                for (int j = 0; j < successors.length; j++) {
+                    compiled.proportions[nextChild + j] = prop[j];
+                }
+                nextChild += successors.length;
+            }
+            double[] classDistribution = (double[]) classDistributionField.get(node);
+            if (classDistribution == null) {
+                compiled.distributions[i] = unclassified;
+            } else {
+                double[] distribution = classDistribution.clone();
+                if (nominalClass)
+                    Utils.normalize(distribution);
+                compiled.distributions[i] = distribution;
+            }
+        }
+        return compiled;
+    }
+
+    private static Field field(Class<?> owner, String name) throws NoSuchFieldException {
+        Field field = owner.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    /**
+     * Calculates the probability of each class for an example.
+     *
+     * @param values The values of the example, one for each attribute, NaN for a missing value
+     * @return The distribution of the probability that the example belongs to a certain class, null if weka would
+     * not classify it
+     */
+    double[] distributionForValues(double[] values) {
+        // without missing values the path is followed without recursion, the deepest node on the path that has a
+        // distribution is the one weka returns
+        double[] deepest = null;
+        int node = 0;
+        while (true) {
+            if (distributions[node] != null)
+                deepest = distributions[node];
+            int attribute = attributes[node];
+            if (attribute == -1)
+                break;
+            double value = values[attribute];
+            if (Double.isNaN(value))
+                return missingDistribution(node, values);
+            node = child(node, value);
+        }
+        return deepest == null ? null : deepest.clone();
+    }
+
+    /**
+     * The distribution of a node like weka calculates it, with the distribution of every child weighted by its proportion
+     * for a node whose attribute is missing. The returned array may be the distribution of a node and must not be changed.
+     */
+    private double[] subtreeDistribution(int node, double[] values) {
+        double[] returned = null;
+        int attribute = attributes[node];
+        if (attribute > -1) {
+            if (Double.isNaN(values[attribute])) {
+                returned = missingDistribution(node, values);
+            } else {
+                returned = subtreeDistribution(child(node, values[attribute]), values);
+            }
+        }
+        return returned == null ? distributions[node] : returned;
+    }
+
+    private double[] missingDistribution(int node, double[] values) {
+        double[] returned = new double[numClasses];
+        for (int i = firstChild[node]; i < firstChild[node] + childCounts[node]; i++) {
+            double[] help = subtreeDistribution(i, values);
+            if (help != null) {
+                for (int j = 0; j < help.length; j++) {
+                    returned[j] += proportions[i] * help[j];
+                }
+            }
+        }
+        return returned;
+    }
+
+    private int child(int node, double value) {
+        if (nominal[node]) {
+            int index = (int) value;
+            if (index < 0 || index >= childCounts[node])
+                throw new ArrayIndexOutOfBoundsException(index);
+            return firstChild[node] + index;
+        }
+        return value < splitPoints[node] ? firstChild[node] : firstChild[node] + 1;
+    }
+
+    /**
+     * @return An estimate of the memory used by the arrays of the tree in bytes
+     */
+    long estimateMemory() {
+        long bytes = attributes.length * (4L + 1 + 8 + 4 + 4 + 8 + 8);
+        for (double[] distribution : distributions) {
+            if (distribution != null)
+                bytes += 16 + 8L * distribution.length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,163 @@
+package Classifier;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.trees.RandomForest;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A k-fold cross-validation of a classifier of which the folds are trained and scored in parallel, on at most
+ * CROSS_VALIDATION_THREADS threads (the amount of processors by default). The folds are made and the predictions are
+ * added up in the same order as weka's Evaluation.crossValidateModel, so it gives the same accuracy and AUC.
+ * All k training and test sets are made with trainCV and testCV before any fold runs, and are kept for the whole run,
+ * since the training sets also give the priors of the evaluation. The sets share the instances of the data, but every
+ * training set holds a list of about (k - 1) / k references per instance, so together they take about k references
+ * per instance, whatever CROSS_VALIDATION_THREADS is. A RandomForest divides its execution slots over the folds that
+ * run at the same time, so a cross-validation uses about as many threads as building the forest itself.
+ */
+class CrossValidation {
+
+    /**
+     * The seed that the data is shuffled with, the same as the default seed of weka's cross-validation.
+     */
+    private static final long SEED = 1;
+
+    private final int folds;
+    private final double accuracy;
+    private final double areaUnderRoc;
+    private final long[] foldTimes;
+
+    private CrossValidation(int folds, double accuracy, double areaUnderRoc, long[] foldTimes) {
+        this.folds = folds;
+        this.accuracy = accuracy;
+        this.areaUnderRoc = areaUnderRoc;
+        this.foldTimes = foldTimes;
+    }
+
+    /**
+     * Cross-validates a classifier on the data.
+     *
+     * @param classifier The configured classifier, it is copied for every fold and not built itself
+     * @param data       The instances with their class index set, they are not changed
+     * @param folds      The amount of folds, at least 2 and at most the amount of instances
+     * @return The accuracy and AUC over all folds and the time every fold took
+     * @throws Exception The amount of folds does not fit the data, or the classifier could not be built or copied
+     */
+    static CrossValidation run(AbstractClassifier classifier, Instances data, int folds) throws Exception {
+        if (folds < 2 || folds > data.numInstances())
+            throw new IllegalArgumentException("Can not cross-validate " + data.numInstances() + " instances in " + folds + " folds");
+        Instances shuffled = new Instances(data);
+        Random random = new Random(SEED);
+        shuffled.randomize(random);
+        if (shuffled.classAttribute().isNominal())
+            shuffled.stratify(folds);
+        // trainCV shuffles every training set with the same random, so the sets are made in order before any fold runs
+        List<Instances> trainSets = new ArrayList<>(folds);
+        List<Instances> testSets = new ArrayList<>(folds);
+        for (int i = 0; i < folds; i++) {
+            trainSets.add(shuffled.trainCV(folds, i, random));
+            testSets.add(shuffled.testCV(folds, i));
+        }
+        Classifier[] copies = AbstractClassifier.makeCopies(classifier, folds);
+
+        int threads = Math.max(1, Math.min(threadsFromEnvironment(), folds));
+        // the folds already run in parallel, so every forest gets its share of the threads of the classifier
+        if (classifier instanceof RandomForest) {
+            int slots = Math.max(1, ((RandomForest) classifier).getNumExecutionSlots() / threads);
+            for (Classifier copy : copies) {
+                ((RandomForest) copy).setNumExecutionSlots(slots);
+            }
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "cross-validation-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        double[][][] distributions = new double[folds][][];
+        long[] foldTimes = new long[folds];
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < folds; i++) {
+                int fold = i;
+                futures.add(executor.submit(() -> {
+                    long start = System.currentTimeMillis();
+                    copies[fold].buildClassifier(trainSets.get(fold));
+                    Instances test = testSets.get(fold);
+                    double[][] foldDistributions = new double[test.numInstances()][];
+                    for (int j = 0; j < test.numInstances(); j++) {
+                        foldDistributions[j] = copies[fold].distributionForInstance(test.instance(j));
+                    }
+                    distributions[fold] = foldDistributions;
+                    copies[fold] = null;
+                    foldTimes[fold] = System.currentTimeMillis() - start;
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception)
+                        throw (Exception) e.getCause();
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the predictions are added in the order of the folds, like weka does when it runs the folds one after the other
+        Evaluation evaluation = new Evaluation(shuffled);
+        for (int i = 0; i < folds; i++) {
+            evaluation.setPriors(trainSets.get(i));
+            Instances test = testSets.get(i);
+            for (int j = 0; j < test.numInstances(); j++) {
+                evaluation.evaluateModelOnceAndRecordPrediction(distributions[i][j], test.instance(j));
+            }
+        }
+        return new CrossValidation(folds, evaluation.pctCorrect() / 100, evaluation.weightedAreaUnderROC(), foldTimes);
+    }
+
+    private static int threadsFromEnvironment() {
+        String value = System.getenv("CROSS_VALIDATION_THREADS");
+        if (value == null || value.isEmpty())
+            return Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Integer.parseInt(value.trim()));
+    }
+
+    int getFolds() {
+        return folds;
+    }
+
+    /**
+     * @return The fraction of the instances that was classified correctly, between 0 and 1
+     */
+    double getAccuracy() {
+        return accuracy;
+    }
+
+    /**
+     * @return The area under the ROC curve, averaged over the classes weighted by their amount of instances
+     */
+    double getAreaUnderRoc() {
+        return areaUnderRoc;
+    }
+
+    /**
+     * @return The time in milliseconds it took to train and score every fold
+     */
+    long[] getFoldTimes() {
+        return foldTimes;
+    }
+}
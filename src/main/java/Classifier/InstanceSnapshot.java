@@ -0,0 +1,150 @@
+package Classifier;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The training data of a classifier stored as a DatasetSnapshot: the names of the bindings of the data query and the
+ * values of every instance after ClassifierParser converted them, so a build from a snapshot neither queries nor parses.
+ * The values are stored per row, so the rows can be read one after the other, also into a MappedRowStore, which is
+ * then written segment by segment like a build from the triplestore.
+ * Changing ClassifierParser does not change the snapshot, refresh it after such a change.
+ * <p>
+ * Layout of the file, gzipped and big endian: magic, version, the amount of binding names, every name as UTF, the
+ * amount of columns, the amount of rows, then per row the value of every column as a double.
+ */
+class InstanceSnapshot {
+
+    private static final int MAGIC = 0x52344953;
+    private static final int VERSION = 2;
+
+    private final List<String> names;
+    private final Instances instances;
+
+    /**
+     * @param names     The names of the bindings of the data query
+     * @param instances The instances that were made from the results of the query
+     */
+    InstanceSnapshot(List<String> names, Instances instances) {
+        this.names = names;
+        this.instances = instances;
+    }
+
+    List<String> getNames() {
+        return names;
+    }
+
+    Instances getInstances() {
+        return instances;
+    }
+
+    /**
+     * Writes the snapshot to a file. The file is first written next to the target and then moved in place, so a build
+     * never reads a half written snapshot. Builds that refresh the same snapshot at the same time each write their own
+     * temporary file, the last one to finish replaces the snapshot.
+     *
+     * @throws IOException Could not write the file
+     */
+    void write(File file) throws IOException {
+        File temporaryFile = File.createTempFile("." + file.getName() + "-", ".tmp", file.getAbsoluteFile().getParentFile());
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temporaryFile))))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(names.size());
+            for (String name : names) {
+                output.writeUTF(name);
+            }
+            output.writeInt(instances.numAttributes());
+            output.writeInt(instances.numInstances());
+            for (int row = 0; row < instances.numInstances(); row++) {
+                Instance instance = instances.instance(row);
+                for (int column = 0; column < instances.numAttributes(); column++) {
+                    output.writeDouble(instance.value(column));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw e;
+        }
+        try {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a snapshot into instances with the given attributes. The class is the last attribute, like in a build from
+     * the triplestore. Out of core the rows are added to a MappedRowStore one after the other instead of to instances on
+     * the heap.
+     *
+     * @param file       The file of the snapshot
+     * @param attributes Makes the attributes of the instances from the names of the bindings
+     * @param outOfCore  True to keep the values in a MappedRowStore
+     * @throws IOException Could not read the file, it is not a snapshot of a supported version, or it has another amount
+     *                     of columns than there are attributes. Snapshots of version 1, which stored the values per
+     *                     column, are not supported anymore and have to be refreshed
+     */
+    static InstanceSnapshot read(File file, AttributeFactory attributes, boolean outOfCore) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (input.readInt() != MAGIC)
+                throw new IOException(file + " is not an instance snapshot");
+            int version = input.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported instance snapshot version " + version + ", refresh the snapshot");
+            int nameCount = input.readInt();
+            List<String> names = new ArrayList<>(nameCount);
+            for (int i = 0; i < nameCount; i++) {
+                names.add(input.readUTF());
+            }
+            ArrayList<Attribute> attributeList = attributes.create(names);
+            int columnCount = input.readInt();
+            int rowCount = input.readInt();
+            if (columnCount != attributeList.size())
+                throw new IOException("The snapshot has " + columnCount + " columns, but there are " + attributeList.size()
+                        + " attributes, refresh the snapshot");
+            if (outOfCore) {
+                MappedRowStore store = new MappedRowStore(columnCount);
+                // every row is read into the same array, the store copies it
+                double[] values = new double[columnCount];
+                for (int row = 0; row < rowCount; row++) {
+                    readRow(input, values);
+                    store.add(values);
+                }
+                return new InstanceSnapshot(names, store.toInstances("theData", attributeList, columnCount - 1));
+            }
+            Instances instances = new Instances("theData", attributeList, rowCount);
+            instances.setClassIndex(columnCount - 1);
+            for (int row = 0; row < rowCount; row++) {
+                double[] values = new double[columnCount];
+                readRow(input, values);
+                instances.add(new DenseInstance(1, values));
+            }
+            return new InstanceSnapshot(names, instances);
+        }
+    }
+
+    private static void readRow(DataInputStream input, double[] values) throws IOException {
+        for (int column = 0; column < values.length; column++) {
+            values[column] = input.readDouble();
+        }
+    }
+
+    /**
+     * Makes the attributes of the instances from the names of the bindings of the data query.
+     */
+    interface AttributeFactory {
+        ArrayList<Attribute> create(List<String> names);
+    }
+}
@@ -0,0 +1,288 @@
+package Classifier;
+
+import weka.core.AbstractInstance;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the values of the training data of a classifier in a memory-mapped file instead of on the heap, for data that
+ * does not fit in the heap. The rows are written to the file while they are read from the query, one segment of
+ * OUT_OF_CORE_SEGMENT_MB megabytes (64 by default) at a time. A full segment is forced to disk before the next one is
+ * mapped, so at most one segment of values that are not yet on disk is kept in memory, the other pages of the file can
+ * be dropped by the operating system and are read back when the classifier needs them.
+ * The instances made from the store are views of about 40 bytes per row that read their values from the file, so
+ * the heap used by the data no longer grows with the amount of attributes, until weka changes an instance. Weka itself still uses a few arrays with an
+ * element per row while it builds a tree.
+ * <p>
+ * The file is made in OUT_OF_CORE_DIRECTORY (/data by default) and deleted right away, the mappings keep its data
+ * reachable until they are garbage collected, so the file is never left behind.
+ */
+class MappedRowStore {
+
+    private static final int BYTES_PER_VALUE = 8;
+
+    private final int columns;
+    private final int rowsPerSegment;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    /**
+     * The values of every segment, read by their absolute index so the views can read them from several threads
+     */
+    private final List<DoubleBuffer> segmentValues = new ArrayList<>();
+    private long rowCount = 0;
+
+    /**
+     * Creates an empty store in a new file in OUT_OF_CORE_DIRECTORY, with segments of OUT_OF_CORE_SEGMENT_MB megabytes.
+     *
+     * @param columns The amount of values in every row
+     * @throws IOException Could not create the file
+     */
+    MappedRowStore(int columns) throws IOException {
+        this(columns, new File(directoryFromEnvironment()), segmentMegabytesFromEnvironment() * 1024L * 1024L);
+    }
+
+    /**
+     * Creates an empty store in a new file in the given directory.
+     *
+     * @param columns      The amount of values in every row
+     * @param directory    The directory to make the file in
+     * @param segmentBytes The size of the segments that are mapped, rounded down to whole rows
+     * @throws IOException Could not create the file
+     */
+    MappedRowStore(int columns, File directory, long segmentBytes) throws IOException {
+        this.columns = columns;
+        // a mapping can be at most 2 GB
+        long maxRows = Integer.MAX_VALUE / ((long) BYTES_PER_VALUE * columns);
+        this.rowsPerSegment = (int) Math.max(1, Math.min(maxRows, segmentBytes / ((long) BYTES_PER_VALUE * columns)));
+        File file = File.createTempFile("rows-", ".spill", directory);
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        if (!file.delete())
+            file.deleteOnExit();
+    }
+
+    private static int segmentMegabytesFromEnvironment() {
+        String value = System.getenv("OUT_OF_CORE_SEGMENT_MB");
+        if (value == null || value.isEmpty())
+            return 64;
+        return Math.max(1, Integer.parseInt(value.trim()));
+    }
+
+    private static String directoryFromEnvironment() {
+        String value = System.getenv("OUT_OF_CORE_DIRECTORY");
+        return value == null || value.isEmpty() ? "/data" : value;
+    }
+
+    /**
+     * Adds a row at the end of the store.
+     *
+     * @param values The values of the row, only the first columns are used. The array can be reused by the caller
+     * @throws IOException Could not map the next segment of the file
+     */
+    void add(double[] values) throws IOException {
+        if (rowCount == (long) segments.size() * rowsPerSegment)
+            mapNextSegment();
+        DoubleBuffer segment = segmentValues.get(segmentValues.size() - 1);
+        segment.position((int) (rowCount % rowsPerSegment) * columns);
+        segment.put(values, 0, columns);
+        rowCount += 1;
+    }
+
+    private void mapNextSegment() throws IOException {
+        if (!segments.isEmpty())
+            segments.get(segments.size() - 1).force();
+        long size = (long) rowsPerSegment * columns * BYTES_PER_VALUE;
+        MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * size, size);
+        segment.order(ByteOrder.nativeOrder());
+        segments.add(segment);
+        segmentValues.add(segment.asDoubleBuffer());
+    }
+
+    /**
+     * Writes the last segment to disk and makes instances that read their values from the store. No rows can be added
+     * after this.
+     *
+     * @param name       The name of the instances
+     * @param attributes The attributes of the instances, one for each column
+     * @param classIndex The index of the class attribute
+     * @throws IOException Could not write the last segment or close the file
+     */
+    Instances toInstances(String name, ArrayList<Attribute> attributes, int classIndex) throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        // the mappings stay valid after the channel is closed
+        channel.close();
+        Instances instances = new Instances(name, attributes, (int) rowCount);
+        instances.setClassIndex(classIndex);
+        for (long row = 0; row < rowCount; row++) {
+            instances.add(new MappedInstance(segmentValues.get((int) (row / rowsPerSegment)),
+                    (int) (row % rowsPerSegment) * columns, columns, 1));
+        }
+        return instances;
+    }
+
+    /**
+     * A row of the store as a weka instance. Copies share the row, so copying it as weka does all the time only
+     * allocates the view. The first change of an instance copies its row to the heap, the changes are made to that copy
+     * and never to the file. The instance is serialized as a DenseInstance.
+     */
+    private static final class MappedInstance extends AbstractInstance {
+        private static final long serialVersionUID = 1L;
+
+        private final DoubleBuffer values;
+        private final int offset;
+        private final int columns;
+        /**
+         * The values of the instance once it was changed, null as long as they are read from the store
+         */
+        private double[] changedValues;
+
+        MappedInstance(DoubleBuffer values, int offset, int columns, double weight) {
+            this.values = values;
+            this.offset = offset;
+            this.columns = columns;
+            this.m_Weight = weight;
+        }
+
+        @Override
+        public double value(int attIndex) {
+            if (changedValues != null)
+                return changedValues[attIndex];
+            return values.get(offset + attIndex);
+        }
+
+        @Override
+        public double valueSparse(int indexOfIndex) {
+            return value(indexOfIndex);
+        }
+
+        @Override
+        public Object copy() {
+            MappedInstance copy = new MappedInstance(values, offset, columns, m_Weight);
+            copy.m_Dataset = m_Dataset;
+            if (changedValues != null)
+                copy.changedValues = changedValues.clone();
+            return copy;
+        }
+
+        @Override
+        public Instance copy(double[] values) {
+            DenseInstance copy = new DenseInstance(m_Weight, values);
+            copy.setDataset(m_Dataset);
+            return copy;
+        }
+
+        @Override
+        public int index(int position) {
+            return position;
+        }
+
+        @Override
+        public int numAttributes() {
+            return changedValues != null ? changedValues.length : columns;
+        }
+
+        @Override
+        public int numValues() {
+            return numAttributes();
+        }
+
+        @Override
+        public double[] toDoubleArray() {
+            if (changedValues != null)
+                return changedValues.clone();
+            double[] array = new double[columns];
+            for (int i = 0; i < columns; i++) {
+                array[i] = values.get(offset + i);
+            }
+            return array;
+        }
+
+        /**
+         * @return The values of the instance on the heap, copied from the store the first time
+         */
+        private double[] changedValues() {
+            if (changedValues == null)
+                changedValues = toDoubleArray();
+            return changedValues;
+        }
+
+        private DenseInstance toDenseInstance() {
+            DenseInstance instance = new DenseInstance(m_Weight, toDoubleArray());
+            instance.setDataset(m_Dataset);
+            return instance;
+        }
+
+        @Override
+        public Instance mergeInstance(Instance inst) {
+            return toDenseInstance().mergeInstance(inst);
+        }
+
+        @Override
+        public String toStringNoWeight() {
+            return toDenseInstance().toStringNoWeight();
+        }
+
+        @Override
+        public String toStringNoWeight(int afterDecimalPoint) {
+            return toDenseInstance().toStringNoWeight(afterDecimalPoint);
+        }
+
+        @Override
+        public void replaceMissingValues(double[] array) {
+            if (array == null || array.length != numAttributes())
+                throw new IllegalArgumentException("Unequal number of attributes!");
+            double[] values = changedValues();
+            for (int i = 0; i < values.length; i++) {
+                if (Utils.isMissingValue(values[i]))
+                    values[i] = array[i];
+            }
+        }
+
+        @Override
+        public void setValue(int attIndex, double value) {
+            changedValues()[attIndex] = value;
+        }
+
+        @Override
+        public void setValueSparse(int indexOfIndex, double value) {
+            setValue(indexOfIndex, value);
+        }
+
+        @Override
+        protected void forceDeleteAttributeAt(int position) {
+            double[] values = changedValues();
+            double[] newValues = new double[values.length - 1];
+            System.arraycopy(values, 0, newValues, 0, position);
+            System.arraycopy(values, position + 1, newValues, position, values.length - position - 1);
+            changedValues = newValues;
+        }
+
+        @Override
+        protected void forceInsertAttributeAt(int position) {
+            double[] values = changedValues();
+            double[] newValues = new double[values.length + 1];
+            System.arraycopy(values, 0, newValues, 0, position);
+            newValues[position] = Utils.missingValue();
+            System.arraycopy(values, position, newValues, position + 1, values.length - position);
+            changedValues = newValues;
+        }
+
+        private Object writeReplace() {
+            return toDenseInstance();
+        }
+    }
+}
@@ -1,32 +1,43 @@
 package Classifier;
 
 import Associator.BuildModelPayload;
+import Associator.SweepPayload;
 import Main.Algorithm;
+import Main.DatasetSnapshot;
 import Main.Metadata;
+import Main.Metrics;
+import Main.SweepRun;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import weka.classifiers.AbstractClassifier;
-import weka.classifiers.Evaluation;
+import weka.classifiers.trees.RandomForest;
 import weka.classifiers.trees.RandomTree;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
-import weka.core.Instance;
 import weka.core.Instances;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
- * The builder for the RandomTree algorithm. In the future this should extend the ClassifierBuilder class, which does not yet exist.
- * It builds a RandomTree model from a query and calls ClassifierWriter to write it to disk.
+ * The builder for the RandomTree and RandomForest algorithms. In the future this should extend the ClassifierBuilder class, which does not yet exist.
+ * It builds a RandomTree or RandomForest model from a query and calls ClassifierWriter to write it to disk.
+ * The trees of a RandomForest are built in parallel by weka's Bagging, on RANDOMFOREST_THREADS threads.
+ * Out of core, the data is kept in a MappedRowStore instead of on the heap.
  */
 public class RandomTreeBuilder {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(RandomTreeBuilder.class);
+
     /**
      * The uuid of the most recently build model, to be given to the user so they can identify the model.
      */
@@ -34,6 +45,8 @@ public class RandomTreeBuilder {
 
     /**
      * Creates a list of instances from data from the database and uses them to build a classifier. It then writes this model + headers to disk as a native .model file.
+     * If the payload asks for a snapshot, the instances are stored as a DatasetSnapshot, and are read from it by later
+     * builds with the same query. If the payload asks for folds, the classifier is first cross-validated, see CrossValidation.
      *
      * @param repo    The repository that contains the data to be queried
      * @param payload Contains the algorithm and its options to use, and the method for storing the resulting model. Given by the user from the frontend.
@@ -41,73 +54,183 @@ public class RandomTreeBuilder {
      * @return Returns a Metadata object with metadata information about the construction of the model
      */
     public Metadata buildModel(Repository repo, BuildModelPayload payload) {
-        RepositoryConnection conn = repo.getConnection();
+        try {
+            return buildFrom(ingest(repo, payload), payload);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Builds a model for every set of options of a sweep. The data is queried and parsed only once, and the models are
+     * built from the same instances in parallel, see SweepRun.runAll. A RandomTree copies the instances it is built
+     * from, so the runs do not change the shared instances.
+     *
+     * @param repo    The repository that contains the data to be queried
+     * @param payload Contains the algorithm and the sets of options to build models with
+     * @return The model id and metadata, or the error, of the run of every set of options, in the order of the sets
+     * @throws Exception The data could not be queried or read from the snapshot
+     */
+    public List<SweepRun> sweep(Repository repo, SweepPayload payload) throws Exception {
+        Ingestion ingestion = ingest(repo, payload.toBuildModelPayload(null));
+        return SweepRun.runAll(payload.getOptionSets(), options -> {
+            RandomTreeBuilder builder = new RandomTreeBuilder();
+            Metadata metadata = builder.buildFrom(ingestion, payload.toBuildModelPayload(options));
+            return new SweepRun(options, builder.getNewestUuid(), metadata);
+        });
+    }
+
+    /**
+     * The instances a model is built from and how they were obtained.
+     */
+    private static final class Ingestion {
+        private List<String> names;
+        private List<String> transformedNames;
+        private Instances instances;
+        private File snapshot;
+        private boolean snapshotRead;
+    }
+
+    /**
+     * Gets the instances of a build: from the snapshot if it may be read, or else by querying the triplestore.
+     */
+    private Ingestion ingest(Repository repo, BuildModelPayload payload) throws Exception {
         String queryString = System.getenv("CLASSIFIER_DATA_QUERY");
+        Ingestion ingestion = new Ingestion();
+        ingestion.snapshot = payload.getSnapshot() == null ? null : DatasetSnapshot.fileOf("classifier", queryString);
+        ingestion.snapshotRead = DatasetSnapshot.shouldRead(payload.getSnapshot(), ingestion.snapshot);
+        if (ingestion.snapshotRead) {
+            InstanceSnapshot instanceSnapshot = InstanceSnapshot.read(ingestion.snapshot,
+                    bindingNames -> stringsToAttributes(ClassifierParser.transformHeader(bindingNames)), payload.isOutOfCore());
+            ingestion.names = instanceSnapshot.getNames();
+            ingestion.transformedNames = ClassifierParser.transformHeader(ingestion.names);
+            ingestion.instances = instanceSnapshot.getInstances();
+            return ingestion;
+        }
+        RepositoryConnection conn = repo.getConnection();
         TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, queryString);
-        try {
-            TupleQueryResult result = tupleQuery.evaluate();
-            List<String> names = result.getBindingNames();
-            List<String> transformedNames = ClassifierParser.transformHeader(names);
-            Instances instanceList = new Instances("theData", stringsToAttributes(transformedNames), transformedNames.size());
+        long queryStart = Metrics.start();
+        TupleQueryResult result = tupleQuery.evaluate();
+        Metrics.SPARQL_QUERY_DURATION.observeSince(queryStart, "classifier");
+        long transferStart = Metrics.start();
+        List<String> names = result.getBindingNames();
+        List<String> transformedNames = ClassifierParser.transformHeader(names);
+        // every row is parsed into the same array, it is copied into the instances or the store
+        double[] values = new double[transformedNames.size()];
+        Instances instanceList;
+        if (payload.isOutOfCore()) {
+            MappedRowStore store = new MappedRowStore(values.length);
+            while (result.hasNext()) {
+                parseBindingSet(result.next(), names, values);
+                store.add(values);
+            }
+            instanceList = store.toInstances("theData", stringsToAttributes(transformedNames), transformedNames.size() - 1);
+        } else {
+            instanceList = new Instances("theData", stringsToAttributes(transformedNames), transformedNames.size());
             instanceList.setClassIndex(transformedNames.size() - 1);
-
             while (result.hasNext()) {
-                BindingSet bindingSet = result.next();
-                instanceList.add(bindingSetToInstance(bindingSet, names));
+                parseBindingSet(result.next(), names, values);
+                instanceList.add(new DenseInstance(1, values.clone()));
+            }
+        }
+        result.close();
+        conn.close();
+        Metrics.SPARQL_TRANSFER_DURATION.observeSince(transferStart, "classifier");
+        if (ingestion.snapshot != null) {
+            try {
+                new InstanceSnapshot(names, instanceList).write(ingestion.snapshot);
+            } catch (IOException e) {
+                // the instances are already read, so the model is still built without the snapshot
+                LOGGER.error("Could not write the snapshot {}", ingestion.snapshot, e);
             }
-            result.close();
-            conn.close();
+        }
+        ingestion.names = names;
+        ingestion.transformedNames = transformedNames;
+        ingestion.instances = instanceList;
+        return ingestion;
+    }
 
-            Algorithm algorithm = payload.getAlgorithm();
-            AbstractClassifier classifier;
-            //can be expanded with other Classifier algorithms
-            switch (algorithm) {
-                case RANDOMTREE: {
-                    classifier = new RandomTree();
-                    break;
-                }
-                default:
-                    throw new IllegalArgumentException();
+    /**
+     * Builds the classifier from the instances and writes the model.
+     */
+    private Metadata buildFrom(Ingestion ingestion, BuildModelPayload payload) throws Exception {
+        String queryString = System.getenv("CLASSIFIER_DATA_QUERY");
+        List<String> names = ingestion.names;
+        List<String> transformedNames = ingestion.transformedNames;
+        Instances instanceList = ingestion.instances;
+        File snapshot = ingestion.snapshot;
+        boolean snapshotRead = ingestion.snapshotRead;
+        Algorithm algorithm = payload.getAlgorithm();
+        AbstractClassifier classifier;
+        //can be expanded with other Classifier algorithms
+        switch (algorithm) {
+            case RANDOMTREE: {
+                classifier = new RandomTree();
+                break;
             }
-            String[] options = payload.getOptions();
-            classifier.setOptions(options);
-            long startTime = System.currentTimeMillis();
-            System.out.println(instanceList.toSummaryString());
-            classifier.buildClassifier(instanceList);
-            long endTime = System.currentTimeMillis();
-            long runtime = endTime - startTime;
-            String concatenatedOptions = "";
-            for (String optionValue : options) {
-                concatenatedOptions += optionValue;
+            case RANDOMFOREST: {
+                classifier = new RandomForest();
+                break;
             }
-            Metadata metadata = new Metadata(runtime, queryString, algorithm.toString(), instanceList.size(), concatenatedOptions);
-            com.eaio.uuid.UUID uuid = new com.eaio.uuid.UUID();
-            setNewestUuid(uuid.toString());
-            Evaluation test = new Evaluation(instanceList);
-            test.evaluateModel(classifier, instanceList);
-            ClassifierWriter writer = new ClassifierWriter();
-            writer.toNativeFile(classifier, stringsToAttributes(transformedNames), names, uuid.toString());
-            return metadata;
-
-        } catch (Exception e) {
-            e.printStackTrace();
+            default:
+                throw new IllegalArgumentException();
         }
-        return null;
+        String[] options = payload.getOptions();
+        // setOptions empties the options it has read, they are still needed for the metadata
+        classifier.setOptions(options.clone());
+        if (classifier instanceof RandomForest && !Arrays.asList(options).contains("-num-slots"))
+            ((RandomForest) classifier).setNumExecutionSlots(forestThreads());
+        // the folds are copies of the classifier before it is built
+        CrossValidation crossValidation = payload.getFolds() == 0 ? null
+                : CrossValidation.run(classifier, instanceList, payload.getFolds());
+        long startTime = System.currentTimeMillis();
+        classifier.buildClassifier(instanceList);
+        long endTime = System.currentTimeMillis();
+        long runtime = endTime - startTime;
+        String concatenatedOptions = "";
+        for (String optionValue : options) {
+            concatenatedOptions += optionValue;
+        }
+        Metadata metadata = new Metadata(runtime, queryString, algorithm.toString(), instanceList.size(), concatenatedOptions);
+        if (snapshot != null)
+            metadata.setSnapshot(snapshot.getName(), snapshotRead);
+        if (payload.isOutOfCore())
+            metadata.setSpilledBytes((long) Double.BYTES * instanceList.numInstances() * instanceList.numAttributes());
+        com.eaio.uuid.UUID uuid = new com.eaio.uuid.UUID();
+        setNewestUuid(uuid.toString());
+        if (crossValidation != null)
+            metadata.setEvaluation(crossValidation.getFolds(), crossValidation.getAccuracy(),
+                    crossValidation.getAreaUnderRoc(), crossValidation.getFoldTimes());
+        ClassifierWriter writer = new ClassifierWriter();
+        writer.toNativeFile(classifier, stringsToAttributes(transformedNames), names, uuid.toString());
+        return metadata;
     }
 
-    private Instance bindingSetToInstance(BindingSet bindingset, List<String> names) {
+    /**
+     * @return The amount of trees of a RandomForest that are built at the same time, given by the RANDOMFOREST_THREADS
+     * environmental variable (the amount of processors by default). The -num-slots option of a build takes precedence.
+     */
+    private static int forestThreads() {
+        String value = System.getenv("RANDOMFOREST_THREADS");
+        if (value == null || value.isEmpty())
+            return Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Integer.parseInt(value.trim()));
+    }
 
-        List<Double> tempList = new ArrayList<>();
+    /**
+     * Parses one row of the query into values by using the ClassifierParser, the class is the last value.
+     */
+    private void parseBindingSet(BindingSet bindingset, List<String> names, double[] values) {
+        int temp = 0;
         for (int i = 0; i < names.size() - 1; i++) {
-            Double[] tempArray = ClassifierParser.parse(names.get(i), (bindingset.getValue(names.get(i))).stringValue());
-            tempList.addAll(Arrays.asList(tempArray));
-        }
-        double[] attList = new double[tempList.size() + 1];
-        for (int i = 0; i < tempList.size(); i++) {
-            attList[i] = tempList.get(i);
+            Double[] parsedValues = ClassifierParser.parse(names.get(i), (bindingset.getValue(names.get(i))).stringValue());
+            for (Double value : parsedValues) {
+                values[temp] = value;
+                temp += 1;
+            }
         }
-        attList[tempList.size()] = Integer.parseInt(bindingset.getValue(names.get(names.size() - 1)).stringValue());
-        return new DenseInstance(1, attList);
+        values[temp] = Integer.parseInt(bindingset.getValue(names.get(names.size() - 1)).stringValue());
     }
 
     private ArrayList<Attribute> stringsToAttributes(List<String> strings) {
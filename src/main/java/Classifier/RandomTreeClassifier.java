@@ -1,12 +1,19 @@
 package Classifier;
 
+import Main.Metrics;
 import weka.classifiers.AbstractClassifier;
+import weka.classifiers.trees.RandomForest;
+import weka.classifiers.trees.RandomTree;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * A class for classifying examples using a loaded model
@@ -31,6 +38,22 @@ public class RandomTreeClassifier {
      * The post-parser attributes as given by the ClassifierParser
      */
     private ArrayList<Attribute> newheader;
+    /**
+     * The dataset that every instance to classify refers to, created once per loaded model and only read while classifying
+     */
+    private Instances dataset;
+    /**
+     * The loaded model compiled into flat arrays, null if the model is not a RandomTree or could not be compiled
+     */
+    private CompiledRandomTree compiledTree;
+    /**
+     * The loaded model compiled into a forest of flat trees, null if the model is not a RandomForest or could not be compiled
+     */
+    private CompiledRandomForest compiledForest;
+    /**
+     * The size of the loaded model files, used as an estimate of the memory used by the loaded model
+     */
+    private long modelFileSize = 0;
 
     public String getIdentifier() {
         return identifier;
@@ -49,66 +72,75 @@ public class RandomTreeClassifier {
      * Couldn't load the model, the file referred by the identifier does not exist or another I/O error happened
      */
     public void loadModelFromNative(UseClassifierPayload payload) throws Exception {
+        long start = Metrics.start();
         classifier = (AbstractClassifier) weka.core.SerializationHelper.read("/data/" + payload.getIdentifier() + ".model");
         oldheader = (ArrayList<String>) weka.core.SerializationHelper.read("/data/" + payload.getIdentifier() + "-oldheader.model");
         newheader = (ArrayList<Attribute>) weka.core.SerializationHelper.read("/data/" + payload.getIdentifier() + "-newheader.model");
+        modelFileSize = new File("/data/" + payload.getIdentifier() + ".model").length()
+                + new File("/data/" + payload.getIdentifier() + "-oldheader.model").length()
+                + new File("/data/" + payload.getIdentifier() + "-newheader.model").length();
+        dataset = new Instances("temp", newheader, 0);
+        // the class is the last attribute, as in the instances the model was built from
+        dataset.setClassIndex(newheader.size() - 1);
+        compiledTree = null;
+        compiledForest = null;
+        try {
+            if (classifier instanceof RandomTree)
+                compiledTree = CompiledRandomTree.compile((RandomTree) classifier);
+            else if (classifier instanceof RandomForest)
+                compiledForest = CompiledRandomForest.compile((RandomForest) classifier, dataset.numClasses());
+        } catch (Exception e) {
+            // weka itself is used for this model
+            e.printStackTrace();
+        }
+        Metrics.MODEL_LOAD_DURATION.observeSince(start, "classifier", "native");
     }
 
     /**
-     * Converts an array of doubles, which represent an example, into an instance and calculates the probability of each class for it
-     * @param doubles
-     * An array of doubles, which represents an example
-     * @return
-     * The distribution of the probability that the example belongs to a certain class
-     * @throws Exception
-     * The classifier broke
+     * @return An estimate of the memory used by the loaded model in bytes, based on the size of its serialized files and its compiled trees
      */
-    private double[] classifyInstance(double[] doubles) throws Exception {
-        Instance instance = new DenseInstance(1, doubles);
-        instance.setDataset(new Instances("temp", newheader, newheader.size()));
-        return classifier.distributionForInstance(instance);
+    public long estimateMemory() {
+        return modelFileSize + (compiledTree == null ? 0 : compiledTree.estimateMemory())
+                + (compiledForest == null ? 0 : compiledForest.estimateMemory());
     }
 
     /**
-     * Classifies a list of examples
-     * @param matrix
-     * A two-dimensional array in which each row represents one example and each column one feature
-     * @return
-     * The distribution of classes for each example
-     * @throws Exception
-     * The classifier broke on one of the examples
+     * An instance whose values are overwritten for every example, so a thread only allocates one instance for all the
+     * examples it classifies
      */
-    private double[][] classifyInstances(double[][] matrix) throws Exception {
-        double[][] results = new double[matrix.length][matrix[0].length];
-        for (int i = 0; i < matrix.length; i++) {
-            results[i] = classifyInstance(matrix[i]);
+    private static class ReusableInstance extends DenseInstance {
+        private static final long serialVersionUID = 1L;
+
+        ReusableInstance(int numAttributes) {
+            super(numAttributes);
+        }
+
+        /**
+         * @return The values of this instance, to be filled in with the next example
+         */
+        double[] values() {
+            return m_AttValues;
         }
-        return results;
     }
 
     /**
-     * Converts a two-dimensional array of strings into a two-dimensional array of doubles by using the ClassifierParser.
+     * Parses one example into the values of the given instance by using the ClassifierParser.
      * The parser can convert one feature into multiple features.
-     * @param matrix
-     * A two-dimensional array in which each row represents one example and each column one pre-parser feature
-     * @return
-     * A two-dimensional array in which each row represents one example and each column one feature
-     *
+     * @param row
+     * An example in which each column is one pre-parser feature
+     * @param values
+     * The values to fill in, one for each feature
      */
-    private double[][] parseStringMatrix(String[][] matrix) {
-
-        double[][] results = new double[matrix.length][newheader.size() - 1];
-        for (int i = 0; i < matrix.length; i++) {
-            int temp = 0;
-            for (int j = 0; j < matrix[0].length; j++) {
-                Double[] parsedValues = ClassifierParser.parse(oldheader.get(j), matrix[i][j]);
-                for (Double value : parsedValues) {
-                    results[i][temp] = value;
-                    temp += 1;
-                }
+    private void parseRow(String[] row, double[] values) {
+        Arrays.fill(values, 0);
+        int temp = 0;
+        for (int j = 0; j < row.length; j++) {
+            Double[] parsedValues = ClassifierParser.parse(oldheader.get(j), row[j]);
+            for (Double value : parsedValues) {
+                values[temp] = value;
+                temp += 1;
             }
         }
-        return results;
     }
 
     /**
@@ -116,13 +148,76 @@ public class RandomTreeClassifier {
      * The array is first parsed and then each example gets classified.
      * @param matrix
      * A two-dimensional array in which each row represents one example and each column one pre-parser feature
+     * @param compiled
+     * Whether to use the compiled tree or forest instead of weka, weka is used anyway if the model is not compiled
      * @return
      * The distribution of classes for each example
      * @throws Exception
      * The classifier broke on one of the examples
      */
-    public double[][] classifyString(String[][] matrix) throws Exception {
-        return classifyInstances(parseStringMatrix(matrix));
+    public double[][] classifyString(String[][] matrix, boolean compiled) throws Exception {
+        double[][] results = new double[matrix.length][];
+        CompiledRandomTree tree = compiledTree;
+        if (compiled && tree != null) {
+            ThreadLocal<double[]> buffers = ThreadLocal.withInitial(() -> new double[newheader.size() - 1]);
+            IntStream.range(0, matrix.length).parallel().forEach(i -> {
+                double[] values = buffers.get();
+                parseRow(matrix[i], values);
+                results[i] = tree.distributionForValues(values);
+            });
+            return results;
+        }
+        CompiledRandomForest forest = compiledForest;
+        if (compiled && forest != null) {
+            int columns = newheader.size() - 1;
+            if (matrix.length < ForkJoinPool.getCommonPoolParallelism()) {
+                // too few examples to keep every thread busy, so the trees of each example are scored in parallel
+                for (int i = 0; i < matrix.length; i++) {
+                    double[] values = new double[columns];
+                    parseRow(matrix[i], values);
+                    results[i] = forest.distributionForValuesParallel(values);
+                }
+                return results;
+            }
+            ThreadLocal<double[]> buffers = ThreadLocal.withInitial(() -> new double[columns]);
+            IntStream.range(0, matrix.length).parallel().forEach(i -> {
+                double[] values = buffers.get();
+                parseRow(matrix[i], values);
+                results[i] = forest.distributionForValues(values);
+            });
+            return results;
+        }
+        // every thread of the common pool gets its own instance, the model and the dataset are only read
+        ThreadLocal<ReusableInstance> instances = ThreadLocal.withInitial(() -> {
+            ReusableInstance instance = new ReusableInstance(newheader.size() - 1);
+            instance.setDataset(dataset);
+            return instance;
+        });
+        try {
+            IntStream.range(0, matrix.length).parallel().forEach(i -> {
+                ReusableInstance instance = instances.get();
+                parseRow(matrix[i], instance.values());
+                try {
+                    results[i] = classifier.distributionForInstance(instance);
+                } catch (Exception e) {
+                    throw new ClassificationException(e);
+                }
+            });
+        } catch (ClassificationException e) {
+            throw (Exception) e.getCause();
+        }
+        return results;
+    }
+
+    /**
+     * Carries the exception of the classifier out of the parallel stream
+     */
+    private static class ClassificationException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ClassificationException(Exception cause) {
+            super(cause);
+        }
     }
 
 }
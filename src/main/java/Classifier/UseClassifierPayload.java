@@ -19,6 +19,10 @@ public class UseClassifierPayload {
      * The identifier of the model which is given when creating the model
      */
     private String identifier;
+    /**
+     * Whether to classify with the compiled tree instead of weka, by default given by the CLASSIFIER_COMPILED environmental variable
+     */
+    private Boolean compiled;
 
     public String[][] getToClassify() {
         return toClassify;
@@ -44,6 +48,14 @@ public class UseClassifierPayload {
         this.identifier = identifier;
     }
 
+    public Boolean getCompiled() {
+        return compiled;
+    }
+
+    public void setCompiled(Boolean compiled) {
+        this.compiled = compiled;
+    }
+
     /**
      * Checks whether this is a valid payload
      * @return
@@ -69,5 +81,7 @@ public class UseClassifierPayload {
         }
         if (algorithm == null)
             setAlgorithm(Algorithm.RANDOMTREE);
+        if (compiled == null)
+            setCompiled(Boolean.parseBoolean(System.getenv("CLASSIFIER_COMPILED")));
     }
 }
@@ -3,7 +3,16 @@ package Main;
 /**
  * Which algorithm to use to build/use a model. Contains both associators and classifiers.
  * This might be split up if necessary.
+ * PARALLEL_FPGROWTH is the built-in multi-core FP-Growth, which takes the same options as FPGROWTH.
+ * RANDOMFOREST is weka's RandomForest, of which the trees are built in parallel.
  */
 public enum Algorithm {
-    FPGROWTH, APRIORI, RANDOMTREE
+    FPGROWTH, APRIORI, RANDOMTREE, PARALLEL_FPGROWTH, RANDOMFOREST;
+
+    /**
+     * @return True if the algorithm builds a classifier, false if it builds an associator
+     */
+    public boolean isClassifier() {
+        return this == RANDOMTREE || this == RANDOMFOREST;
+    }
 }
@@ -0,0 +1,124 @@
+package Main;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A request to build a model that is run by BuildJobs. Its status can be followed through the /jobs endpoint while it is
+ * queued or running, and once it is done it holds the identifier and the metadata of the built model, or the runs of
+ * all models if it is a parameter sweep.
+ */
+public class BuildJob {
+
+    /**
+     * The states a job goes through: queued until a build slot is free, then running, and then either done or failed.
+     */
+    enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private final String id;
+    private final String type;
+    private final long submitTime;
+    private volatile Status status = Status.QUEUED;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile Metadata metadata;
+    private volatile String modelId;
+    private volatile List<SweepRun> runs;
+    private volatile String error;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    BuildJob(String id, String type) {
+        this.id = id;
+        this.type = type;
+        this.submitTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Stores the result of the build, to be called by the build itself once the model is written.
+     *
+     * @param metadata The metadata of the built model, null if the builder could not build it
+     * @param modelId  The identifier of the built model
+     */
+    public void finish(Metadata metadata, String modelId) {
+        this.metadata = metadata;
+        this.modelId = modelId;
+    }
+
+    /**
+     * Stores the result of a parameter sweep, to be called by the sweep itself once all runs are done.
+     *
+     * @param runs The run of every set of options of the sweep
+     */
+    public void finish(List<SweepRun> runs) {
+        this.runs = runs;
+    }
+
+    void started() {
+        startTime = System.currentTimeMillis();
+        status = Status.RUNNING;
+    }
+
+    void ended(String error) {
+        endTime = System.currentTimeMillis();
+        if (error == null && metadata == null && runs == null)
+            error = "The model could not be built";
+        this.error = error;
+        if (error != null)
+            modelId = null;
+        status = error == null ? Status.DONE : Status.FAILED;
+        finished.countDown();
+    }
+
+    /**
+     * Waits until the job is done or has failed.
+     */
+    void await() throws InterruptedException {
+        finished.await();
+    }
+
+    boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getStatus() {
+        return status.toString().toLowerCase();
+    }
+
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public Metadata getMetadata() {
+        return metadata;
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    public List<SweepRun> getRuns() {
+        return runs;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,123 @@
+package Main;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the builds of models on a small pool of threads instead of on the threads that handle the requests.
+ * Only BUILD_CONCURRENCY builds run at the same time (1 by default), so a few large builds can not take all the cpu and
+ * memory away from the requests that use models. Up to BUILD_QUEUE_SIZE builds (100 by default) wait for a free slot,
+ * builds beyond that are rejected. The last BUILD_JOB_HISTORY finished jobs (1000 by default) are kept so their status
+ * can still be requested.
+ */
+class BuildJobs {
+
+    /**
+     * The work of a job: builds the model and gives its result to the job through BuildJob.finish.
+     */
+    interface ModelBuild {
+        void run(BuildJob job) throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int history;
+    /**
+     * All jobs by their id, in the order in which they were submitted.
+     */
+    private final LinkedHashMap<String, BuildJob> jobs = new LinkedHashMap<>();
+
+    BuildJobs(int concurrency, int queueSize, int history) {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "model-build-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.history = history;
+    }
+
+    /**
+     * Creates the job runner with the limits given by the BUILD_CONCURRENCY, BUILD_QUEUE_SIZE and BUILD_JOB_HISTORY environmental variables.
+     */
+    static BuildJobs fromEnvironment() {
+        return new BuildJobs(intFromEnvironment("BUILD_CONCURRENCY", 1), intFromEnvironment("BUILD_QUEUE_SIZE", 100),
+                intFromEnvironment("BUILD_JOB_HISTORY", 1000));
+    }
+
+    private static int intFromEnvironment(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty())
+            return defaultValue;
+        return Math.max(1, Integer.parseInt(value.trim()));
+    }
+
+    /**
+     * Queues a build. The returned job is queued until one of the build threads is free.
+     *
+     * @param type  The kind of model that is built, only used to describe the job
+     * @param build Builds the model
+     * @return The queued job
+     * @throws RejectedExecutionException There are already BUILD_QUEUE_SIZE builds waiting
+     */
+    BuildJob submit(String type, ModelBuild build) throws RejectedExecutionException {
+        BuildJob job = new BuildJob(UUID.randomUUID().toString(), type);
+        synchronized (this) {
+            jobs.put(job.getId(), job);
+        }
+        try {
+            executor.execute(() -> run(job, build));
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                jobs.remove(job.getId());
+            }
+            throw e;
+        }
+        return job;
+    }
+
+    private void run(BuildJob job, ModelBuild build) {
+        job.started();
+        String error = null;
+        try {
+            build.run(job);
+        } catch (Throwable e) {
+            e.printStackTrace();
+            error = e.toString();
+        }
+        job.ended(error);
+        forgetOldJobs();
+    }
+
+    /**
+     * Removes the oldest finished jobs once more than the configured history is kept. Jobs that are still queued or running are never removed.
+     */
+    private synchronized void forgetOldJobs() {
+        int finishedJobs = 0;
+        for (BuildJob job : jobs.values()) {
+            if (job.isFinished())
+                finishedJobs += 1;
+        }
+        Iterator<Map.Entry<String, BuildJob>> iterator = jobs.entrySet().iterator();
+        while (finishedJobs > history && iterator.hasNext()) {
+            if (iterator.next().getValue().isFinished()) {
+                iterator.remove();
+                finishedJobs -= 1;
+            }
+        }
+    }
+
+    /**
+     * @return The job with the given id, or null if there is no such job or it was finished too long ago
+     */
+    synchronized BuildJob get(String id) {
+        return jobs.get(id);
+    }
+}
@@ -0,0 +1,79 @@
+package Main;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Names the local snapshots of the data of a build. A builder that is asked to use a snapshot stores the converted
+ * results of its data queries in /data, and a later build with the same queries reads them from there instead of
+ * querying the triplestore and converting the results again. A snapshot is identified by the SHA-256 of the text of the
+ * queries, so changing a query never reuses the data of the old query. The data in the triplestore is not checked, a
+ * snapshot is only replaced when a build asks to refresh it.
+ * The format of the file is up to the builder, since each builder stores the data in the form it is built from.
+ */
+public final class DatasetSnapshot {
+
+    /**
+     * Reads the snapshot if it exists, otherwise the data is queried and stored as the snapshot.
+     */
+    public static final String REUSE = "reuse";
+    /**
+     * Always queries the data and replaces the snapshot with it.
+     */
+    public static final String REFRESH = "refresh";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private DatasetSnapshot() {
+    }
+
+    /**
+     * @param kind    The kind of data, so the snapshots of different builders never share a file
+     * @param queries The text of every query the data is made from, in a fixed order
+     * @return The file of the snapshot of the data of the queries
+     */
+    public static File fileOf(String kind, String... queries) {
+        return new File("/data/snapshot-" + kind + "-" + keyOf(queries));
+    }
+
+    /**
+     * @return The SHA-256 of the queries in hexadecimal, each query is followed by a null character
+     */
+    static String keyOf(String... queries) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String query : queries) {
+                if (query != null)
+                    digest.update(query.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            byte[] hash = digest.digest();
+            char[] chars = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                chars[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+                chars[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
+            }
+            return new String(chars);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param mode The snapshot mode of a build payload: REUSE, REFRESH or null to not use a snapshot
+     * @return True if the build should read the snapshot instead of querying the data
+     */
+    public static boolean shouldRead(String mode, File snapshot) {
+        return REUSE.equals(mode) && snapshot.isFile();
+    }
+
+    /**
+     * @return True if the mode is a valid snapshot mode of a build payload
+     */
+    public static boolean isValidMode(String mode) {
+        return mode == null || REUSE.equals(mode) || REFRESH.equals(mode);
+    }
+}
@@ -4,44 +4,84 @@ import Associator.*;
 import Classifier.RandomTreeBuilder;
 import Classifier.RandomTreeClassifier;
 import Classifier.UseClassifierPayload;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.eclipse.rdf4j.repository.sparql.SPARQLRepository;
+import spark.Response;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 import static spark.Spark.*;
 
 public class Main {
 
     /**
-     *The currently loaded FrequentItemSetCalculated.
+     * The loaded FrequentItemSetCalculators and RandomTreeClassifiers, keyed by their identifier.
      */
-    private static FrequentItemSetCalculator itemSetCalculator = null;
+    private static ModelCache modelCache = ModelCache.fromEnvironment();
+
     /**
-     * The currently loaded RandomTreeClassifier.
+     * Runs the builds of models, both the ones that are waited for and the asynchronous ones.
      */
-    private static RandomTreeClassifier randomTreeClassifier = null;
+    private static BuildJobs buildJobs = BuildJobs.fromEnvironment();
+
+    /**
+     * Reads and writes the json of all requests. ObjectMappers, ObjectReaders and ObjectWriters are thread-safe once they
+     * are configured, and they cache the serializers of the classes they have seen, so one is shared by all requests.
+     * Responses are written to the output stream of the servlet, which must stay open for the servlet to finish it.
+     */
+    private static final ObjectMapper mapper = new ObjectMapper().configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+    private static final ObjectWriter prettyWriter = mapper.writer().withDefaultPrettyPrinter();
+    private static final ObjectReader buildModelReader = mapper.reader(BuildModelPayload.class);
+    private static final ObjectReader sweepReader = mapper.reader(SweepPayload.class);
+    private static final ObjectReader useAssociatorReader = mapper.reader(UseAssociatorPayload.class);
+    private static final ObjectReader useAssociatorBatchReader = mapper.reader(UseAssociatorBatchPayload.class);
+    private static final ObjectReader useClassifierReader = mapper.reader(UseClassifierPayload.class);
+
+    /**
+     * The routes that get their own series in the request metrics, all other paths are counted together.
+     */
+    private static final Set<String> METRIC_ROUTES = new HashSet<>(Arrays.asList("POST /build-model", "POST /build-tree", "POST /sweep",
+            "POST /determine-frequent-items", "POST /determine-frequent-items/batch", "POST /classify", "GET /jobs/:id", "GET /model-cache", "GET /analyse",
+            "POST /relatedrules", "GET /metrics"));
 
     public static void main(String[] args) {
         port(80);
         String sparqlEndpoint = System.getenv("SPARQL_ENDPOINT");
         SPARQLRepository repo = new SPARQLRepository(sparqlEndpoint);
         repo.initialize();
+        Metrics.register(modelCache);
+        Metrics.register(Main::writeLoadedModelMetrics);
+
+        /*
+         * Times every request for the request metrics, see /metrics.
+         */
+        before((request, response) -> request.attribute("metrics-start", Metrics.start()));
+        after((request, response) -> {
+            Long start = request.attribute("metrics-start");
+            if (start != null)
+                Metrics.REQUEST_DURATION.observeSince(start, metricRoute(request.requestMethod(), request.pathInfo()),
+                        Integer.toString(response.raw().getStatus()));
+        });
 
         /*
          * A request to build a list of AssociationRules from queried data. The JSON payload consists of a query that retrieves the data,
          * the algorithm that weka has to use on the data, the options given to the algorithm and a method
          * to store the resulting list of AssociationRules.
          * Default values will be inserted if some of the values of the payload are null. A json string is returned when the rules are finished.
+         * If the payload is async, 202 is returned right away with the id of the build job, see /jobs/:id.
          */
         post("/build-model", (request, response) -> {
-            ObjectMapper mapper = new ObjectMapper();
             response.header("Content-Type:", "application/vnd.api+json");
             if (!request.headers("Content-Type").equals("application/vnd.api+json")) {
                 response.status(415);
@@ -52,26 +92,32 @@ public class Main {
                 return "";
             }
             try {
-                BuildModelPayload payload = mapper.readValue(request.body(), BuildModelPayload.class);
+                BuildModelPayload payload = buildModelReader.readValue(request.raw().getInputStream());
                 payload.insertDefaults();
                 if (!payload.isValid()) {
                     response.status(400);
                     return mapper.writeValueAsString("This is not a valid payload");
                 }
-                response.status(201);
                 response.type("application/json");
-                AssociatorBuilder builder = new AssociatorBuilder();
-                Metadata metadata = builder.buildModel(repo, payload);
-                String uuid = builder.getNewestUuid();
-                ObjectNode objectNode1 = mapper.createObjectNode();
-                ObjectNode objectNode2 = mapper.createObjectNode();
-                ObjectNode objectNode3 = mapper.createObjectNode();
-                JsonNode node = mapper.valueToTree(metadata);
-                objectNode1.replace("data", objectNode2);
-                objectNode2.put("id", uuid);
-                objectNode2.replace("attributes", objectNode3);
-                objectNode3.replace("metadata", node);
-                return objectNode1.toString();
+                BuildJob job;
+                try {
+                    job = buildJobs.submit("associator", buildJob -> {
+                        AssociatorBuilder builder = new AssociatorBuilder();
+                        buildJob.finish(builder.buildModel(repo, payload), builder.getNewestUuid());
+                    });
+                } catch (RejectedExecutionException e) {
+                    response.status(503);
+                    return mapper.writeValueAsString("There are too many builds waiting, try again later");
+                }
+                if (payload.isAsync()) {
+                    response.status(202);
+                    response.header("Location", "/jobs/" + job.getId());
+                    return writeJob(response, job);
+                }
+                job.await();
+                response.status(201);
+                Metadata metadata = job.getMetadata();
+                return writeData(response, job.getModelId(), "metadata", generator -> generator.writeObject(metadata));
             } catch (JsonParseException | JsonMappingException f) {
                 response.status(400);
                 f.printStackTrace();
@@ -83,11 +129,60 @@ public class Main {
          * A request to build a randomTree classifier from queried data. The JSON payload consists of a query that retrieves the data,
          * the algorithm that weka has to use on the data, the options given to the algorithm and a method
          * to store the resulting model.
-         * Default values will be inserted if some of the values of the payload are null. A json string is returned when the rules are finished.
+         * Default values will be inserted if some of the values of the payload are null. A json string is returned when the model is finished.
+         * If the payload is async, 202 is returned right away with the id of the build job, see /jobs/:id.
          */
         post("/build-tree", (request, response) -> {
-            ObjectMapper mapper = new ObjectMapper();
+            response.header("Content-Type:", "application/vnd.api+json");
+            if (!request.headers("Content-Type").equals("application/vnd.api+json")) {
+                response.status(415);
+                return "";
+            }
+            if (!request.headers("Accept").equals("application/vnd.api+json")) {
+                response.status(406);
+                return "";
+            }
+            try {
+                BuildModelPayload payload = buildModelReader.readValue(request.raw().getInputStream());
+                payload.insertDefaults();
+                if (!payload.isValid() || payload.isIncremental()) {
+                    response.status(400);
+                    return mapper.writeValueAsString("This is not a valid payload");
+                }
+                response.type("application/json");
+                BuildJob job;
+                try {
+                    job = buildJobs.submit("classifier", buildJob -> {
+                        RandomTreeBuilder builder = new RandomTreeBuilder();
+                        buildJob.finish(builder.buildModel(repo, payload), builder.getNewestUuid());
+                    });
+                } catch (RejectedExecutionException e) {
+                    response.status(503);
+                    return mapper.writeValueAsString("There are too many builds waiting, try again later");
+                }
+                if (payload.isAsync()) {
+                    response.status(202);
+                    response.header("Location", "/jobs/" + job.getId());
+                    return writeJob(response, job);
+                }
+                job.await();
+                response.status(201);
+                Metadata metadata = job.getMetadata();
+                return writeData(response, job.getModelId(), "metadata", generator -> generator.writeObject(metadata));
+            } catch (JsonParseException | JsonMappingException f) {
+                response.status(400);
+                f.printStackTrace();
+                return mapper.writeValueAsString("This is not a valid JSON input");
+            }
+        });
 
+        /*
+         * A request to build a model for each of several sets of options, to compare them. The JSON payload is the same as
+         * the one of /build-model or /build-tree, with a list of optionSets instead of the options. The data is queried once
+         * and the models are built from it in parallel. The response holds the id and metadata of the model of every set of
+         * options, or the error if that model could not be built. The whole sweep takes one build slot, see /jobs/:id.
+         */
+        post("/sweep", (request, response) -> {
             response.header("Content-Type:", "application/vnd.api+json");
             if (!request.headers("Content-Type").equals("application/vnd.api+json")) {
                 response.status(415);
@@ -98,27 +193,38 @@ public class Main {
                 return "";
             }
             try {
-                BuildModelPayload payload = mapper.readValue(request.body(), BuildModelPayload.class);
+                SweepPayload payload = sweepReader.readValue(request.raw().getInputStream());
                 payload.insertDefaults();
                 if (!payload.isValid()) {
                     response.status(400);
                     return mapper.writeValueAsString("This is not a valid payload");
                 }
-                response.status(201);
                 response.type("application/json");
-                RandomTreeBuilder builder = new RandomTreeBuilder();
-                Metadata metadata = builder.buildModel(repo, payload);
-                String uuid = builder.getNewestUuid();
-                ObjectNode objectNode1 = mapper.createObjectNode();
-                ObjectNode objectNode2 = mapper.createObjectNode();
-                ObjectNode objectNode3 = mapper.createObjectNode();
-                JsonNode node = mapper.valueToTree(metadata);
-                objectNode1.replace("data", objectNode2);
-                objectNode2.put("id", uuid);
-                objectNode2.replace("attributes", objectNode3);
-                objectNode3.replace("metadata", node);
-
-                return objectNode1.toString();
+                BuildJob job;
+                try {
+                    job = buildJobs.submit("sweep", buildJob -> {
+                        if (payload.getAlgorithm().isClassifier())
+                            buildJob.finish(new RandomTreeBuilder().sweep(repo, payload));
+                        else
+                            buildJob.finish(new AssociatorBuilder().sweep(repo, payload));
+                    });
+                } catch (RejectedExecutionException e) {
+                    response.status(503);
+                    return mapper.writeValueAsString("There are too many builds waiting, try again later");
+                }
+                if (payload.isAsync()) {
+                    response.status(202);
+                    response.header("Location", "/jobs/" + job.getId());
+                    return writeJob(response, job);
+                }
+                job.await();
+                if (job.getRuns() == null) {
+                    response.status(500);
+                    return mapper.writeValueAsString(job.getError());
+                }
+                response.status(201);
+                List<SweepRun> runs = job.getRuns();
+                return writeData(response, job.getId(), "runs", generator -> generator.writeObject(runs));
             } catch (JsonParseException | JsonMappingException f) {
                 response.status(400);
                 f.printStackTrace();
@@ -131,11 +237,10 @@ public class Main {
          * strings on which to apply the AssociationRules, the algorithm that created the AssociationRules, the method to retrieve the data and an
          * identifier which is either a UUID that identifies the set of rules in the triplestore or the name of
          * the file to read. Default values will be inserted if some of the values of the payload are null.
-         * If the identifier is not equal to the identifier of the last request, the rules are loaded from the file or
-         * triplestore. They are then stored in memory for the next request.
+         * If the rules of the identifier are not in the model cache, they are loaded from the file or
+         * triplestore. They are then stored in the model cache for the next requests.
          */
         post("/determine-frequent-items", (request, response) -> {
-            ObjectMapper mapper = new ObjectMapper();
             response.header("Content-Type:", "application/vnd.api+json");
             if (!request.headers("Content-Type").equals("application/vnd.api+json")) {
                 response.status(415);
@@ -145,10 +250,8 @@ public class Main {
                 response.status(406);
                 return "";
             }
-            if (itemSetCalculator == null)
-                itemSetCalculator = new FrequentItemSetCalculator();
             try {
-                UseAssociatorPayload payload = mapper.readValue(request.body(), UseAssociatorPayload.class);
+                UseAssociatorPayload payload = useAssociatorReader.readValue(request.raw().getInputStream());
                 payload.insertDefaults();
                 if (!payload.isValid()) {
                     response.status(400);
@@ -156,35 +259,56 @@ public class Main {
                 }
                 response.status(200);
                 response.type("application/json");
-                if (Objects.equals(payload.getIdentifier(), itemSetCalculator.getIdentifier())) {
-                    List<FrequentItem> test = itemSetCalculator.getFrequentItems(payload);
-                    ObjectNode objectNode1 = mapper.createObjectNode();
-                    ObjectNode objectNode2 = mapper.createObjectNode();
-                    ObjectNode objectNode3 = mapper.createObjectNode();
-                    JsonNode node = mapper.valueToTree(test);
-                    objectNode1.replace("data", objectNode2);
-                    objectNode2.put("id", payload.getIdentifier());
-                    objectNode2.replace("attributes", objectNode3);
-                    objectNode3.replace("items", node);
-                    return objectNode1.toString();
-                } else {
-                    try {
-                        itemSetCalculator.loadModel(repo, payload);
-                        itemSetCalculator.setIdentifier(payload.getIdentifier());
-                        List<FrequentItem> test = itemSetCalculator.getFrequentItems(payload);
-                        ObjectNode objectNode1 = mapper.createObjectNode();
-                        ObjectNode objectNode2 = mapper.createObjectNode();
-                        ObjectNode objectNode3 = mapper.createObjectNode();
-                        JsonNode node = mapper.valueToTree(test);
-                        objectNode1.replace("data", objectNode2);
-                        objectNode2.put("id", payload.getIdentifier());
-                        objectNode2.replace("attributes", objectNode3);
-                        objectNode3.replace("items", node);
-                        return objectNode1.toString();
-                    } catch (IllegalArgumentException e) {
-                        e.printStackTrace();
-                        return mapper.writeValueAsString("This is not a valid algorithm");
-                    }
+                try {
+                    FrequentItemSetCalculator itemSetCalculator = getItemSetCalculator(repo, payload);
+                    List<FrequentItem> frequentItems = itemSetCalculator.getFrequentItems(payload);
+                    return writeData(response, payload.getIdentifier(), "items", generator -> generator.writeObject(frequentItems));
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
+                    return mapper.writeValueAsString("This is not a valid algorithm");
+                }
+            } catch (JsonParseException | JsonMappingException f) {
+                response.status(400);
+                f.printStackTrace();
+                return mapper.writeValueAsString("This is not a valid JSON input");
+            }
+        });
+
+        /*
+         * A request to determine the frequent itemsets of many lists of strings on the same model at once. The JSON
+         * payload is the same as for /determine-frequent-items, except that it contains a list of attributeSets instead
+         * of one list of attributes. The lists are calculated in parallel and the items of each list are returned in
+         * the same order as the lists, streamed while the rest of the lists are still being calculated.
+         */
+        post("/determine-frequent-items/batch", (request, response) -> {
+            response.header("Content-Type:", "application/vnd.api+json");
+            if (!request.headers("Content-Type").equals("application/vnd.api+json")) {
+                response.status(415);
+                return "";
+            }
+            if (!request.headers("Accept").equals("application/vnd.api+json")) {
+                response.status(406);
+                return "";
+            }
+            try {
+                UseAssociatorBatchPayload payload = useAssociatorBatchReader.readValue(request.raw().getInputStream());
+                payload.insertDefaults();
+                if (!payload.isValid()) {
+                    response.status(400);
+                    return mapper.writeValueAsString("This is not a valid payload");
+                }
+                response.status(200);
+                response.type("application/json");
+                try {
+                    FrequentItemSetCalculator itemSetCalculator = getItemSetCalculator(repo, payload.toUseAssociatorPayload());
+                    return writeData(response, payload.getIdentifier(), "items", generator -> {
+                        generator.writeStartArray();
+                        itemSetCalculator.getFrequentItems(payload.getAttributeSets(), payload.getLimit(), generator::writeObject);
+                        generator.writeEndArray();
+                    });
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
+                    return mapper.writeValueAsString("This is not a valid algorithm");
                 }
             } catch (JsonParseException | JsonMappingException f) {
                 response.status(400);
@@ -198,12 +322,10 @@ public class Main {
          * strings on which to apply the model, the algorithm that created the classifier, the method to retrieve the data and an
          * identifier which is either a UUID that identifies the set of rules in the triplestore or the name of
          * the file to read. Default values will be inserted if some of the values of the payload are null.
-         * If the identifier is not equal to the identifier of the last request, the rules are loaded from the file or
-         * triplestore. They are then stored in memory for the next request.
+         * If the model of the identifier is not in the model cache, it is loaded from its file.
+         * It is then stored in the model cache for the next requests.
          */
         post("/classify", (request, response) -> {
-            ObjectMapper mapper = new ObjectMapper();
-            ObjectWriter writer = new ObjectMapper().writer().withDefaultPrettyPrinter();
             response.header("Content-Type:", "application/vnd.api+json");
             if (!request.headers("Content-Type").equals("application/vnd.api+json")) {
                 response.status(415);
@@ -213,10 +335,8 @@ public class Main {
                 response.status(406);
                 return "";
             }
-            if (randomTreeClassifier == null)
-                randomTreeClassifier = new RandomTreeClassifier();
             try {
-                UseClassifierPayload payload = mapper.readValue(request.body(), UseClassifierPayload.class);
+                UseClassifierPayload payload = useClassifierReader.readValue(request.raw().getInputStream());
                 payload.insertDefaults();
                 if (!payload.isValid()) {
                     response.status(400);
@@ -224,17 +344,19 @@ public class Main {
                 }
                 response.status(200);
                 response.type("application/json");
-                if (Objects.equals(payload.getIdentifier(), randomTreeClassifier.getIdentifier())) {
-                    return writer.writeValueAsString(randomTreeClassifier.classifyString(payload.getToClassify()));
-                } else {
-                    try {
-                        randomTreeClassifier.loadModelFromNative(payload);
-                        randomTreeClassifier.setIdentifier(payload.getIdentifier());
-                        return writer.writeValueAsString(randomTreeClassifier.classifyString(payload.getToClassify()));
-                    } catch (IllegalArgumentException e) {
-                        e.printStackTrace();
-                        return mapper.writeValueAsString("This is not a valid algorithm");
-                    }
+                try {
+                    RandomTreeClassifier randomTreeClassifier = modelCache.get(ModelCache.ModelType.CLASSIFIER, payload.getIdentifier(), () -> {
+                        RandomTreeClassifier newClassifier = new RandomTreeClassifier();
+                        newClassifier.loadModelFromNative(payload);
+                        newClassifier.setIdentifier(payload.getIdentifier());
+                        return newClassifier;
+                    }, RandomTreeClassifier::estimateMemory);
+                    double[][] classifications = randomTreeClassifier.classifyString(payload.getToClassify(), payload.getCompiled());
+                    prettyWriter.writeValue(response.raw().getOutputStream(), classifications);
+                    return "";
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
+                    return mapper.writeValueAsString("This is not a valid algorithm");
                 }
             } catch (JsonParseException | JsonMappingException f) {
                 response.status(400);
@@ -244,12 +366,67 @@ public class Main {
         });
 
         /*
-         * A request to analyse the rules that are currently loaded into memory.
+         * A request to get the status of a build job: queued, running, done or failed. Once the job is done the id and
+         * the metadata of the built model are returned as well.
+         */
+        get("/jobs/:id", (request, response) -> {
+            response.header("Content-Type:", "application/vnd.api+json");
+            if (!request.headers("Content-Type").equals("application/vnd.api+json")) {
+                response.status(415);
+                return "";
+            }
+            if (!request.headers("Accept").equals("application/vnd.api+json")) {
+                response.status(406);
+                return "";
+            }
+            BuildJob job = buildJobs.get(request.params(":id"));
+            if (job == null) {
+                response.status(404);
+                return mapper.writeValueAsString("There is no build job with this id");
+            }
+            response.status(200);
+            response.type("application/json");
+            return writeJob(response, job);
+        });
+
+        /*
+         * A request to get the statistics of the model cache: the hits, misses and evictions, the memory used by
+         * the cached models and the models that are currently cached.
+         */
+        get("/model-cache", (request, response) -> {
+            response.header("Content-Type:", "application/vnd.api+json");
+            if (!request.headers("Content-Type").equals("application/vnd.api+json")) {
+                response.status(415);
+                return "";
+            }
+            if (!request.headers("Accept").equals("application/vnd.api+json")) {
+                response.status(406);
+                return "";
+            }
+            response.status(200);
+            response.type("application/json");
+            mapper.writeValue(response.raw().getOutputStream(), modelCache.getStatistics());
+            return "";
+        });
+
+        /*
+         * A request to get the metrics of the service in the text format of Prometheus: the time taken by the requests,
+         * the model loads and the queries to the triplestore, the rules that were looked at for the queries on
+         * associator models, the rules of the loaded models, the model cache and the heap and garbage collection of the JVM.
+         * Unlike the other requests this does not need the json headers, so it can be scraped directly.
+         */
+        get("/metrics", (request, response) -> {
+            response.status(200);
+            response.type("text/plain; version=0.0.4");
+            return Metrics.render();
+        });
+
+        /*
+         * A request to analyse the rules of the most recently used associator model.
          * Returns an string which describes the amount of rules of each length that are currently loaded into memory.
          * The first element is the amount of rules of length 1, and so on.
          */
         get("/analyse", (request, response) -> {
-            ObjectMapper mapper = new ObjectMapper();
             response.header("Content-Type:", "application/vnd.api+json");
             if (!request.headers("Content-Type").equals("application/vnd.api+json")) {
                 response.status(415);
@@ -259,6 +436,7 @@ public class Main {
                 response.status(406);
                 return "";
             }
+            FrequentItemSetCalculator itemSetCalculator = (FrequentItemSetCalculator) modelCache.getMostRecent(ModelCache.ModelType.ASSOCIATOR);
             if (itemSetCalculator == null || itemSetCalculator.getIdentifier() == null) {
                 return mapper.writeValueAsString("There is no dataset to analyse yet");
             }
@@ -266,10 +444,12 @@ public class Main {
         });
 
         /*
-        A request to get all rules currently loaded into memory that contain one of the given strings
+        A request to get the rules of the most recently used associator model that contain one of the given strings, in
+        their premise or in their consequence. The rules are returned a page at a time, with their items as strings.
+        The payload can give a pageSize and the cursor to start at, which is the next-cursor of the previous page.
+        The next-cursor is null on the last page.
          */
         post("/relatedrules", (request, response) -> {
-            ObjectMapper mapper = new ObjectMapper();
             response.header("Content-Type:", "application/vnd.api+json");
             if (!request.headers("Content-Type").equals("application/vnd.api+json")) {
                 response.status(415);
@@ -279,15 +459,42 @@ public class Main {
                 response.status(406);
                 return "";
             }
+            FrequentItemSetCalculator itemSetCalculator = (FrequentItemSetCalculator) modelCache.getMostRecent(ModelCache.ModelType.ASSOCIATOR);
             if (itemSetCalculator == null || itemSetCalculator.getIdentifier() == null) {
                 return mapper.writeValueAsString("There is no dataset to analyse yet");
             }
             try {
-                UseAssociatorPayload payload = mapper.readValue(request.body(), UseAssociatorPayload.class);
+                UseAssociatorPayload payload = useAssociatorReader.readValue(request.raw().getInputStream());
                 payload.insertDefaults();
+                if (!payload.isValidPage()) {
+                    response.status(400);
+                    return mapper.writeValueAsString("This is not a valid payload");
+                }
                 response.status(200);
                 response.type("application/json");
-                return mapper.writeValueAsString(itemSetCalculator.getAllRelatedRules(payload));
+                return writeJson(response, generator -> {
+                    generator.writeStartObject();
+                    generator.writeObjectFieldStart("data");
+                    generator.writeStringField("id", itemSetCalculator.getIdentifier());
+                    generator.writeObjectFieldStart("attributes");
+                    generator.writeArrayFieldStart("rules");
+                    Integer next;
+                    try {
+                        next = itemSetCalculator.getRelatedRules(payload, generator::writeObject);
+                    } finally {
+                        // the first request for related rules builds the index from items to rules, which the cache has to count
+                        modelCache.remeasure(ModelCache.ModelType.ASSOCIATOR, itemSetCalculator.getIdentifier());
+                    }
+                    generator.writeEndArray();
+                    generator.writeFieldName("next-cursor");
+                    if (next == null)
+                        generator.writeNull();
+                    else
+                        generator.writeNumber(next);
+                    generator.writeEndObject();
+                    generator.writeEndObject();
+                    generator.writeEndObject();
+                });
             } catch (JsonParseException | JsonMappingException f) {
                 response.status(400);
                 f.printStackTrace();
@@ -298,5 +505,106 @@ public class Main {
 
     }
 
+    /**
+     * Gets the FrequentItemSetCalculator of the identifier of the payload from the model cache. If it is not cached,
+     * its rules are loaded from the file or triplestore and it is stored in the model cache for the next requests.
+     *
+     * @throws Exception The model could not be loaded
+     */
+    private static FrequentItemSetCalculator getItemSetCalculator(SPARQLRepository repo, UseAssociatorPayload payload) throws Exception {
+        return modelCache.get(ModelCache.ModelType.ASSOCIATOR, payload.getIdentifier(), () -> {
+            FrequentItemSetCalculator newCalculator = new FrequentItemSetCalculator();
+            newCalculator.loadModel(repo, payload);
+            newCalculator.setIdentifier(payload.getIdentifier());
+            return newCalculator;
+        }, FrequentItemSetCalculator::estimateMemory);
+    }
+
+    /**
+     * @return The label of a request in the request metrics, the method and the route, with the id of a job replaced by :id
+     */
+    private static String metricRoute(String method, String path) {
+        String route = method + " " + (path.startsWith("/jobs/") ? "/jobs/:id" : path);
+        return METRIC_ROUTES.contains(route) ? route : "other";
+    }
+
+    /**
+     * Writes the amount of rules of each associator model in the model cache.
+     */
+    private static void writeLoadedModelMetrics(StringBuilder out) {
+        Metrics.header(out, "rdf4weka_loaded_model_rules", "The amount of rules of each cached associator model", "gauge");
+        for (Map.Entry<String, Object> model : modelCache.getModels(ModelCache.ModelType.ASSOCIATOR).entrySet()) {
+            FrequentItemSetCalculator calculator = (FrequentItemSetCalculator) model.getValue();
+            Metrics.sample(out, "rdf4weka_loaded_model_rules", calculator.getRuleCount(), "model", model.getKey());
+        }
+    }
 
-}
\ No newline at end of file
+    /**
+     * Writes a json response straight to the output stream of the servlet, instead of building it as a string first.
+     * The status and the type of the response have to be set before, since writing commits them.
+     *
+     * @return The body to return from the route, which is empty since everything is already written
+     */
+    private static String writeJson(Response response, JsonWriter writer) throws IOException {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(response.raw().getOutputStream())) {
+            writer.write(generator);
+        }
+        return "";
+    }
+
+    /**
+     * Writes the usual response of the requests: the data with an id and one attribute, written by the given writer.
+     */
+    private static String writeData(Response response, String id, String attributeName, JsonWriter attribute) throws IOException {
+        return writeJson(response, generator -> {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("data");
+            generator.writeStringField("id", id);
+            generator.writeObjectFieldStart("attributes");
+            generator.writeFieldName(attributeName);
+            attribute.write(generator);
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        });
+    }
+
+    /**
+     * Writes a part of a json response.
+     */
+    private interface JsonWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    /**
+     * Describes a build job the same way as the responses of the other requests: its id, its status and, once it is
+     * done, the id and the metadata of the built model, or the runs of a sweep.
+     */
+    private static String writeJob(Response response, BuildJob job) throws IOException {
+        return writeJson(response, generator -> {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("data");
+            generator.writeStringField("type", "build-jobs");
+            generator.writeStringField("id", job.getId());
+            generator.writeObjectFieldStart("attributes");
+            generator.writeStringField("status", job.getStatus());
+            generator.writeStringField("model-type", job.getType());
+            generator.writeNumberField("submitted", job.getSubmitTime());
+            if (job.getStartTime() != 0)
+                generator.writeNumberField("started", job.getStartTime());
+            if (job.getEndTime() != 0)
+                generator.writeNumberField("finished", job.getEndTime());
+            if (job.getModelId() != null)
+                generator.writeStringField("model", job.getModelId());
+            if (job.getMetadata() != null)
+                generator.writeObjectField("metadata", job.getMetadata());
+            if (job.getRuns() != null)
+                generator.writeObjectField("runs", job.getRuns());
+            if (job.getError() != null)
+                generator.writeStringField("error", job.getError());
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        });
+    }
+}
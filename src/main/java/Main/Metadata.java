@@ -10,6 +10,22 @@ public class Metadata {
     private String query;
     private int totalRows;
     private String options;
+    private long ingestionTime;
+    private long ingestedRows;
+    private long ingestedItems;
+    private long unknownItems;
+    private long tripleStoreWriteTime;
+    private long writtenTriples;
+    private String baseIdentifier;
+    private int transactionCount;
+    private int distinctTransactionCount;
+    private String snapshot;
+    private boolean snapshotRead;
+    private int evaluationFolds;
+    private double accuracy;
+    private double areaUnderRoc;
+    private long[] foldTimes;
+    private long spilledBytes;
 
     public Metadata(long runTime, String query, String algorithm, int totalRows, String options) {
         setQuery(query);
@@ -59,4 +75,156 @@ public class Metadata {
         this.options = options;
     }
 
+    /**
+     * Stores how long it took to read the data from the triplestore and convert it into instances.
+     *
+     * @param ingestionTime The time in milliseconds between evaluating the data query and having converted the last row
+     * @param rows          The amount of rows that were read
+     * @param items         The amount of items in those rows
+     * @param unknownItems  The amount of items that were skipped because they are not one of the attributes
+     */
+    public void setIngestion(long ingestionTime, long rows, long items, long unknownItems) {
+        this.ingestionTime = ingestionTime;
+        this.ingestedRows = rows;
+        this.ingestedItems = items;
+        this.unknownItems = unknownItems;
+    }
+
+    public long getIngestionTime() {
+        return ingestionTime;
+    }
+
+    public long getIngestedRows() {
+        return ingestedRows;
+    }
+
+    public long getIngestedItems() {
+        return ingestedItems;
+    }
+
+    public long getUnknownItems() {
+        return unknownItems;
+    }
+
+    /**
+     * @return The amount of rows that were ingested per second
+     */
+    public double getIngestionRate() {
+        return ingestedRows * 1000.0 / Math.max(1, ingestionTime);
+    }
+
+    /**
+     * Stores how long it took to write the model to the triplestore.
+     *
+     * @param writeTime      The time in milliseconds between starting the writers and the last batch being written
+     * @param writtenTriples The amount of triples that were written
+     */
+    public void setTripleStoreWrite(long writeTime, long writtenTriples) {
+        this.tripleStoreWriteTime = writeTime;
+        this.writtenTriples = writtenTriples;
+    }
+
+    public long getTripleStoreWriteTime() {
+        return tripleStoreWriteTime;
+    }
+
+    public long getWrittenTriples() {
+        return writtenTriples;
+    }
+
+    /**
+     * @return The amount of triples that were written to the triplestore per second
+     */
+    public double getTriplesPerSecond() {
+        return writtenTriples * 1000.0 / Math.max(1, tripleStoreWriteTime);
+    }
+
+    /**
+     * Stores which transactions the model was built from.
+     *
+     * @param baseIdentifier   The identifier of the model whose transactions were updated, null for a full build
+     * @param transactionCount         The amount of transactions the model was built from
+     * @param distinctTransactionCount The amount of distinct transactions among them, which the mining goes over
+     */
+    public void setTransactions(String baseIdentifier, int transactionCount, int distinctTransactionCount) {
+        this.baseIdentifier = baseIdentifier;
+        this.transactionCount = transactionCount;
+        this.distinctTransactionCount = distinctTransactionCount;
+    }
+
+    public String getBaseIdentifier() {
+        return baseIdentifier;
+    }
+
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    public int getDistinctTransactionCount() {
+        return distinctTransactionCount;
+    }
+
+    /**
+     * Stores which local snapshot of the data the model was built with.
+     *
+     * @param snapshot The name of the snapshot file
+     * @param read     True if the data was read from the snapshot, false if it was queried and the snapshot was written
+     */
+    public void setSnapshot(String snapshot, boolean read) {
+        this.snapshot = snapshot;
+        this.snapshotRead = read;
+    }
+
+    public String getSnapshot() {
+        return snapshot;
+    }
+
+    public boolean isSnapshotRead() {
+        return snapshotRead;
+    }
+
+    /**
+     * Stores the result of the cross-validation of a classifier.
+     *
+     * @param folds        The amount of folds
+     * @param accuracy     The fraction of the instances that was classified correctly
+     * @param areaUnderRoc The area under the ROC curve, weighted over the classes
+     * @param foldTimes    The time in milliseconds it took to train and score every fold
+     */
+    public void setEvaluation(int folds, double accuracy, double areaUnderRoc, long[] foldTimes) {
+        this.evaluationFolds = folds;
+        this.accuracy = accuracy;
+        this.areaUnderRoc = areaUnderRoc;
+        this.foldTimes = foldTimes;
+    }
+
+    public int getEvaluationFolds() {
+        return evaluationFolds;
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public double getAreaUnderRoc() {
+        return areaUnderRoc;
+    }
+
+    public long[] getFoldTimes() {
+        return foldTimes;
+    }
+
+    /**
+     * Stores that the data of the model was kept in a memory-mapped file instead of on the heap.
+     *
+     * @param spilledBytes The size of the values in the file in bytes
+     */
+    public void setSpilledBytes(long spilledBytes) {
+        this.spilledBytes = spilledBytes;
+    }
+
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
 }
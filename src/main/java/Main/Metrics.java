@@ -0,0 +1,237 @@
+package Main;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of the service, which are shown by the /metrics request in the text format of Prometheus.
+ * Counters and histograms only use LongAdders and DoubleAdders, so recording a value never takes a lock and threads that
+ * record at the same time do not contend on the same memory. The series of a label value is created the first time
+ * it is used, after that finding it is a lookup in a ConcurrentHashMap, which does not lock either.
+ */
+public final class Metrics {
+
+    /**
+     * The upper bounds in seconds of the buckets of the histograms that measure durations.
+     */
+    private static final double[] DURATION_BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300};
+    /**
+     * The upper bounds of the buckets of the histograms that count rules.
+     */
+    private static final double[] COUNT_BUCKETS = {0, 1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private static final List<Collector> collectors = new CopyOnWriteArrayList<>();
+
+    public static final Histogram REQUEST_DURATION = register(new Histogram("rdf4weka_request_duration_seconds",
+            "The time it took to handle a request, by route and status code", DURATION_BUCKETS, "route", "status"));
+    public static final Histogram MODEL_LOAD_DURATION = register(new Histogram("rdf4weka_model_load_duration_seconds",
+            "The time it took to load a model into memory, by the type of the model and the method it was stored with", DURATION_BUCKETS, "model", "method"));
+    public static final Histogram SPARQL_QUERY_DURATION = register(new Histogram("rdf4weka_sparql_query_duration_seconds",
+            "The time until the triplestore started to send the results of a query, by the builder that sent it", DURATION_BUCKETS, "builder"));
+    public static final Histogram SPARQL_TRANSFER_DURATION = register(new Histogram("rdf4weka_sparql_transfer_duration_seconds",
+            "The time it took to receive and convert all results of a query, by the builder that sent it", DURATION_BUCKETS, "builder"));
+    public static final Histogram RULES_SCANNED = register(new Histogram("rdf4weka_rules_scanned",
+            "The amount of rules that were looked at for one query on an associator model", COUNT_BUCKETS, "query"));
+    public static final Histogram RULES_MATCHED = register(new Histogram("rdf4weka_rules_matched",
+            "The amount of rules that matched one query on an associator model", COUNT_BUCKETS, "query"));
+
+    static {
+        register(Metrics::writeJvmMetrics);
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Writes some of the metrics in the text format.
+     */
+    public interface Collector {
+        void collect(StringBuilder out);
+    }
+
+    /**
+     * Adds metrics that are written every time the metrics are requested.
+     */
+    public static <T extends Collector> T register(T collector) {
+        collectors.add(collector);
+        return collector;
+    }
+
+    /**
+     * @return All metrics in the text format of Prometheus
+     */
+    public static String render() {
+        StringBuilder out = new StringBuilder();
+        for (Collector collector : collectors) {
+            collector.collect(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the HELP and TYPE lines of a metric.
+     */
+    public static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Writes one sample of a metric.
+     *
+     * @param labels The names and values of the labels, one after the other
+     */
+    public static void sample(StringBuilder out, String name, double value, String... labels) {
+        out.append(name);
+        if (labels.length > 0) {
+            out.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0)
+                    out.append(',');
+                out.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String format(double value) {
+        if (value == Double.POSITIVE_INFINITY)
+            return "+Inf";
+        if (value == (long) value)
+            return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    /**
+     * Starts timing something, to be given to Histogram.observeSince once it is done.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * A histogram with a series for every combination of label values. A series counts the observed values per bucket
+     * and keeps their sum, the buckets are only made cumulative when they are written.
+     */
+    public static final class Histogram implements Collector {
+
+        private final String name;
+        private final String help;
+        private final double[] buckets;
+        private final String[] labelNames;
+        private final ConcurrentHashMap<List<String>, Series> series = new ConcurrentHashMap<>();
+
+        Histogram(String name, String help, double[] buckets, String... labelNames) {
+            this.name = name;
+            this.help = help;
+            this.buckets = buckets;
+            this.labelNames = labelNames;
+        }
+
+        /**
+         * Records a value.
+         *
+         * @param labelValues The values of the labels, in the order of the label names of the histogram
+         */
+        public void observe(double value, String... labelValues) {
+            List<String> key = Arrays.asList(labelValues);
+            Series values = series.get(key);
+            if (values == null)
+                values = series.computeIfAbsent(key, k -> new Series(buckets.length));
+            int bucket = 0;
+            while (bucket < buckets.length && value > buckets[bucket]) {
+                bucket += 1;
+            }
+            values.counts[bucket].increment();
+            values.sum.add(value);
+        }
+
+        /**
+         * Records the seconds that passed since the given start.
+         *
+         * @param start The result of Metrics.start
+         */
+        public void observeSince(long start, String... labelValues) {
+            observe((System.nanoTime() - start) / 1e9, labelValues);
+        }
+
+        @Override
+        public void collect(StringBuilder out) {
+            header(out, name, help, "histogram");
+            for (Map.Entry<List<String>, Series> entry : series.entrySet()) {
+                List<String> labelValues = entry.getKey();
+                Series values = entry.getValue();
+                long cumulative = 0;
+                for (int bucket = 0; bucket <= buckets.length; bucket++) {
+                    cumulative += values.counts[bucket].sum();
+                    double bound = bucket < buckets.length ? buckets[bucket] : Double.POSITIVE_INFINITY;
+                    sample(out, name + "_bucket", cumulative, labels(labelValues, "le", format(bound)));
+                }
+                sample(out, name + "_sum", values.sum.sum(), labels(labelValues));
+                sample(out, name + "_count", cumulative, labels(labelValues));
+            }
+        }
+
+        private String[] labels(List<String> labelValues, String... extra) {
+            List<String> labels = new ArrayList<>();
+            for (int i = 0; i < labelNames.length; i++) {
+                labels.add(labelNames[i]);
+                labels.add(labelValues.get(i));
+            }
+            labels.addAll(Arrays.asList(extra));
+            return labels.toArray(new String[labels.size()]);
+        }
+
+        private static final class Series {
+            /**
+             * The amount of values per bucket, the last one counts the values above the highest bound
+             */
+            private final LongAdder[] counts;
+            private final DoubleAdder sum = new DoubleAdder();
+
+            Series(int bucketCount) {
+                counts = new LongAdder[bucketCount + 1];
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = new LongAdder();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the heap usage and the collections of each garbage collector of the JVM.
+     */
+    private static void writeJvmMetrics(StringBuilder out) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        header(out, "jvm_memory_heap_bytes", "The heap memory of the JVM", "gauge");
+        sample(out, "jvm_memory_heap_bytes", heap.getUsed(), "area", "used");
+        sample(out, "jvm_memory_heap_bytes", heap.getCommitted(), "area", "committed");
+        sample(out, "jvm_memory_heap_bytes", heap.getMax(), "area", "max");
+        header(out, "jvm_gc_collections_total", "The amount of collections of each garbage collector", "counter");
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "jvm_gc_collections_total", collector.getCollectionCount(), "gc", collector.getName());
+        }
+        header(out, "jvm_gc_collection_seconds_total", "The time spent in each garbage collector", "counter");
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "jvm_gc_collection_seconds_total", collector.getCollectionTime() / 1000.0, "gc", collector.getName());
+        }
+        header(out, "jvm_threads", "The amount of live threads", "gauge");
+        sample(out, "jvm_threads", ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+}
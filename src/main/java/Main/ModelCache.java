@@ -0,0 +1,280 @@
+package Main;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps several loaded models in memory at once, so clients that alternate between identifiers don't make every request
+ * reload a model from /data or the triplestore. Models are keyed by their type and identifier. When the estimated
+ * footprint of all models exceeds the memory budget, the least recently used models are evicted.
+ * The budget is read from the MODEL_CACHE_MB environmental variable, by default half of the maximum heap is used.
+ * Concurrent requests for a model that is not cached yet share a single load: the first request loads it and the
+ * others wait for that load to finish. Requests for models that are cached never wait for a load.
+ */
+class ModelCache implements Metrics.Collector {
+
+    /**
+     * The kinds of models that can be cached. An associator and a classifier can share the same identifier.
+     */
+    enum ModelType {
+        ASSOCIATOR, CLASSIFIER
+    }
+
+    /**
+     * Loads a model that is not yet in the cache.
+     */
+    interface ModelLoader<T> {
+        T load() throws Exception;
+    }
+
+    private static class Key {
+        private final ModelType type;
+        private final String identifier;
+
+        Key(ModelType type, String identifier) {
+            this.type = type;
+            this.identifier = identifier;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return type == other.type && Objects.equals(identifier, other.identifier);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + Objects.hashCode(identifier);
+        }
+    }
+
+    private static class Entry {
+        private final Object model;
+        /**
+         * Estimates the memory used by the model
+         */
+        private final LongSupplier measure;
+        /**
+         * The memory used by the model when it was last measured
+         */
+        private long footprint;
+
+        Entry(Object model, LongSupplier measure) {
+            this.model = model;
+            this.measure = measure;
+            this.footprint = measure.getAsLong();
+        }
+    }
+
+    /**
+     * The cached models in access order, the least recently used model comes first.
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The loads that are currently running, which requests for the same model wait on instead of loading it again.
+     */
+    private final Map<Key, CompletableFuture<Object>> loading = new HashMap<>();
+    private final long memoryBudget;
+    private long usedMemory = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long sharedLoads = 0;
+
+    ModelCache(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Creates a cache with the budget given by the MODEL_CACHE_MB environmental variable, or half of the maximum heap if it is not set.
+     */
+    static ModelCache fromEnvironment() {
+        String budget = System.getenv("MODEL_CACHE_MB");
+        if (budget == null || budget.isEmpty())
+            return new ModelCache(Runtime.getRuntime().maxMemory() / 2);
+        return new ModelCache(Long.parseLong(budget.trim()) * 1024 * 1024);
+    }
+
+    /**
+     * Returns the model of the given type and identifier, loading it first if it is not in the cache.
+     * The loading itself happens outside of the lock, so requests for models that are already loaded are not held up by it.
+     * If the model is already being loaded by another request, this waits for that load instead of starting a new one.
+     *
+     * @param type       The type of the model
+     * @param identifier The identifier of the model
+     * @param loader     Loads the model if it is not yet cached
+     * @param footprint  Estimates the memory used by the loaded model in bytes
+     * @return The loaded model
+     * @throws Exception The loader could not load the model
+     */
+    <T> T get(ModelType type, String identifier, ModelLoader<T> loader, ToLongFunction<T> footprint) throws Exception {
+        Key key = new Key(type, identifier);
+        CompletableFuture<Object> pendingLoad;
+        boolean loadedByOtherRequest;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits += 1;
+                @SuppressWarnings("unchecked")
+                T model = (T) entry.model;
+                return model;
+            }
+            pendingLoad = loading.get(key);
+            loadedByOtherRequest = pendingLoad != null;
+            if (loadedByOtherRequest) {
+                sharedLoads += 1;
+            } else {
+                misses += 1;
+                pendingLoad = new CompletableFuture<>();
+                loading.put(key, pendingLoad);
+            }
+        }
+        if (loadedByOtherRequest) {
+            @SuppressWarnings("unchecked")
+            T model = (T) waitForLoad(pendingLoad);
+            return model;
+        }
+        try {
+            T model = loader.load();
+            synchronized (this) {
+                put(key, new Entry(model, () -> footprint.applyAsLong(model)));
+                loading.remove(key);
+            }
+            pendingLoad.complete(model);
+            return model;
+        } catch (Throwable e) {
+            synchronized (this) {
+                loading.remove(key);
+            }
+            pendingLoad.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for a load that was started by another request and returns its model, or throws the exception of that load.
+     */
+    private static Object waitForLoad(CompletableFuture<Object> pendingLoad) throws Exception {
+        try {
+            return pendingLoad.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null)
+            usedMemory -= previous.footprint;
+        usedMemory += entry.footprint;
+        evict();
+    }
+
+    /**
+     * Measures the memory used by a cached model again, for models that build parts of themselves on first use after
+     * they were added to the cache. The model becomes the most recently used one and other models are evicted if the
+     * cache is over its budget now. Nothing happens if the model is not cached.
+     *
+     * @param type       The type of the model
+     * @param identifier The identifier of the model
+     */
+    synchronized void remeasure(ModelType type, String identifier) {
+        Entry entry = entries.get(new Key(type, identifier));
+        if (entry == null)
+            return;
+        long footprint = entry.measure.getAsLong();
+        usedMemory += footprint - entry.footprint;
+        entry.footprint = footprint;
+        evict();
+    }
+
+    /**
+     * Evicts the least recently used models until the cache is within its budget.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        // the newest model is always kept, even if it is larger than the whole budget on its own
+        while (usedMemory > memoryBudget && entries.size() > 1) {
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            usedMemory -= eldest.getValue().footprint;
+            iterator.remove();
+            evictions += 1;
+        }
+    }
+
+    /**
+     * @return The most recently used model of the given type, or null if there is none
+     */
+    synchronized Object getMostRecent(ModelType type) {
+        Object mostRecent = null;
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            if (entry.getKey().type == type)
+                mostRecent = entry.getValue().model;
+        }
+        return mostRecent;
+    }
+
+    /**
+     * @return The cached models of the given type by their identifier
+     */
+    synchronized Map<String, Object> getModels(ModelType type) {
+        Map<String, Object> models = new LinkedHashMap<>();
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            if (entry.getKey().type == type)
+                models.put(entry.getKey().identifier, entry.getValue().model);
+        }
+        return models;
+    }
+
+    /**
+     * Writes the counts and the memory usage of the cache for /metrics.
+     */
+    @Override
+    public synchronized void collect(StringBuilder out) {
+        Metrics.header(out, "rdf4weka_model_cache_requests_total", "The requests for a model, by whether it was cached, loaded, or being loaded by another request", "counter");
+        Metrics.sample(out, "rdf4weka_model_cache_requests_total", hits, "result", "hit");
+        Metrics.sample(out, "rdf4weka_model_cache_requests_total", misses, "result", "miss");
+        Metrics.sample(out, "rdf4weka_model_cache_requests_total", sharedLoads, "result", "shared");
+        Metrics.header(out, "rdf4weka_model_cache_evictions_total", "The models that were removed to stay within the memory budget", "counter");
+        Metrics.sample(out, "rdf4weka_model_cache_evictions_total", evictions);
+        Metrics.header(out, "rdf4weka_model_cache_bytes", "The estimated memory used by the cached models and the memory budget", "gauge");
+        Metrics.sample(out, "rdf4weka_model_cache_bytes", usedMemory, "area", "used");
+        Metrics.sample(out, "rdf4weka_model_cache_bytes", memoryBudget, "area", "budget");
+        Metrics.header(out, "rdf4weka_model_cache_models", "The amount of cached models", "gauge");
+        Metrics.sample(out, "rdf4weka_model_cache_models", entries.size());
+    }
+
+    /**
+     * @return The hit, miss and eviction counts and the memory usage of the cache
+     */
+    synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("hits", hits);
+        statistics.put("misses", misses);
+        statistics.put("evictions", evictions);
+        statistics.put("sharedLoads", sharedLoads);
+        statistics.put("usedMemory", usedMemory);
+        statistics.put("memoryBudget", memoryBudget);
+        List<String> models = new ArrayList<>();
+        for (Key key : entries.keySet()) {
+            models.add(key.type + "/" + key.identifier);
+        }
+        statistics.put("models", models);
+        return statistics;
+    }
+}
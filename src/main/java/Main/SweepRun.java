@@ -0,0 +1,108 @@
+package Main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The result of building a model with one set of options of a parameter sweep: the id and metadata of the model, or
+ * the error if the model could not be built.
+ */
+public class SweepRun {
+
+    /**
+     * Builds the model of one set of options.
+     */
+    public interface RunBuild {
+        SweepRun run(String[] options) throws Exception;
+    }
+
+    private final String[] options;
+    private final String modelId;
+    private final Metadata metadata;
+    private final String error;
+
+    public SweepRun(String[] options, String modelId, Metadata metadata) {
+        this(options, modelId, metadata, null);
+    }
+
+    private SweepRun(String[] options, String modelId, Metadata metadata, String error) {
+        this.options = options;
+        this.modelId = modelId;
+        this.metadata = metadata;
+        this.error = error;
+    }
+
+    /**
+     * Runs the builds of all sets of options on a pool of at most SWEEP_CONCURRENCY threads (the amount of processors
+     * by default), so the models are built in parallel without starting a thread per set of options. A build that
+     * fails only fails its own run.
+     *
+     * @return The run of every set of options, in the order of the sets
+     * @throws InterruptedException The sweep was interrupted while waiting for the builds
+     */
+    public static List<SweepRun> runAll(List<String[]> optionSets, RunBuild build) throws InterruptedException {
+        int threads = Math.max(1, Math.min(concurrencyFromEnvironment(), optionSets.size()));
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "sweep-build-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<SweepRun>> futures = new ArrayList<>();
+            for (String[] options : optionSets) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        SweepRun run = build.run(options);
+                        if (run.metadata == null)
+                            return new SweepRun(options, null, null, "The model could not be built");
+                        return run;
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        return new SweepRun(options, null, null, e.toString());
+                    }
+                }));
+            }
+            List<SweepRun> runs = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    runs.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    // the task itself catches the exceptions of the build, so only an Error ends up here
+                    runs.add(new SweepRun(optionSets.get(i), null, null, e.getCause().toString()));
+                }
+            }
+            return runs;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int concurrencyFromEnvironment() {
+        String value = System.getenv("SWEEP_CONCURRENCY");
+        if (value == null || value.isEmpty())
+            return Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Integer.parseInt(value.trim()));
+    }
+
+    public String[] getOptions() {
+        return options;
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    public Metadata getMetadata() {
+        return metadata;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
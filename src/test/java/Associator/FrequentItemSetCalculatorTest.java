@@ -0,0 +1,89 @@
+package Associator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the top frequent items found by stopping early are the first items of the complete, sorted result.
+ */
+public class FrequentItemSetCalculatorTest {
+
+    private static final int ITEMS = 30;
+
+    /**
+     * Random rules with few different supports, so many rules tie on their score.
+     */
+    private static AssociatorModel randomModel(int ruleCount, long seed) {
+        Random random = new Random(seed);
+        List<String> items = new ArrayList<>();
+        for (int item = 0; item < ITEMS; item++) {
+            items.add("item" + item);
+        }
+        RuleStore rules = new RuleStore();
+        int[] premise = new int[3];
+        int[] consequence = new int[2];
+        for (int rule = 0; rule < ruleCount; rule++) {
+            int premiseLength = random.nextInt(4);
+            for (int i = 0; i < premiseLength; i++) {
+                premise[i] = random.nextInt(ITEMS);
+            }
+            int consequenceLength = 1 + random.nextInt(2);
+            for (int i = 0; i < consequenceLength; i++) {
+                consequence[i] = random.nextInt(ITEMS);
+            }
+            rules.addRule(premise, premiseLength, consequence, consequenceLength, 10, 10, 1 + random.nextInt(8));
+        }
+        return AssociatorModel.of(rules, ItemDictionary.of(items));
+    }
+
+    private static List<String> randomAttributes(Random random) {
+        List<String> attributes = new ArrayList<>();
+        int count = 1 + random.nextInt(6);
+        for (int i = 0; i < count; i++) {
+            attributes.add(random.nextInt(15) == 0 ? "unknown" : "item" + random.nextInt(ITEMS));
+        }
+        return attributes;
+    }
+
+    private static void assertSameItems(List<FrequentItem> expected, List<FrequentItem> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getItem(), actual.get(i).getItem());
+            assertEquals(expected.get(i).getScore(), actual.get(i).getScore());
+        }
+    }
+
+    @Test
+    public void topFrequentItemsAreTheFirstOfAllFrequentItems() {
+        AssociatorModel model = randomModel(5000, 1);
+        assertTrue(model.isSortedBySupport());
+        FrequentItemSetCalculator calculator = new FrequentItemSetCalculator();
+        Random random = new Random(2);
+        for (int query = 0; query < 500; query++) {
+            List<String> attributes = randomAttributes(random);
+            List<FrequentItem> all = calculator.getFrequentItems(model, attributes, null);
+            int limit = 1 + random.nextInt(ITEMS);
+            List<FrequentItem> top = calculator.getFrequentItems(model, attributes, limit);
+            assertSameItems(all.subList(0, Math.min(limit, all.size())), top);
+        }
+    }
+
+    @Test
+    public void frequentItemsAreSortedOnTheirScore() {
+        AssociatorModel model = randomModel(2000, 3);
+        FrequentItemSetCalculator calculator = new FrequentItemSetCalculator();
+        Random random = new Random(4);
+        for (int query = 0; query < 200; query++) {
+            List<FrequentItem> all = calculator.getFrequentItems(model, randomAttributes(random), null);
+            for (int i = 1; i < all.size(); i++) {
+                assertTrue(all.get(i - 1).getScore() >= all.get(i).getScore());
+            }
+        }
+    }
+}
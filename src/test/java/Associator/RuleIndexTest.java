@@ -0,0 +1,104 @@
+package Associator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the rules found through the RuleIndex against checking every rule on its own.
+ */
+public class RuleIndexTest {
+
+    private static final int ITEMS = 40;
+
+    /**
+     * Random rules with premises of up to three items, including duplicate items, unknown items and empty premises.
+     */
+    private static RuleStore randomRules(int ruleCount, long seed) {
+        Random random = new Random(seed);
+        RuleStore rules = new RuleStore();
+        int[] premise = new int[3];
+        int[] consequence = {0};
+        for (int rule = 0; rule < ruleCount; rule++) {
+            int premiseLength = random.nextInt(4);
+            for (int i = 0; i < premiseLength; i++) {
+                premise[i] = random.nextInt(20) == 0 ? RuleStore.UNKNOWN_ITEM : random.nextInt(ITEMS);
+            }
+            consequence[0] = random.nextInt(ITEMS);
+            rules.addRule(premise, premiseLength, consequence, 1, 10, 10, 5);
+        }
+        rules.trim();
+        return rules;
+    }
+
+    private static int[] expectedMatches(RuleStore rules, int[] items) {
+        Set<Integer> itemSet = new HashSet<>();
+        for (int item : items) {
+            itemSet.add(item);
+        }
+        List<Integer> matches = new ArrayList<>();
+        for (int rule = 0; rule < rules.size(); rule++) {
+            boolean contained = true;
+            for (int position = rules.premiseStart(rule); position < rules.premiseEnd(rule); position++) {
+                if (!itemSet.contains(rules.premiseItem(position)))
+                    contained = false;
+            }
+            if (contained)
+                matches.add(rule);
+        }
+        return matches.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] randomItems(Random random) {
+        int[] items = new int[1 + random.nextInt(8)];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = random.nextInt(25) == 0 ? RuleStore.UNKNOWN_ITEM : random.nextInt(ITEMS);
+        }
+        return items;
+    }
+
+    @Test
+    public void matchingRulesFindsEveryRuleWhosePremiseIsContained() {
+        RuleStore rules = randomRules(5000, 1);
+        RuleIndex index = new RuleIndex(rules);
+        Random random = new Random(2);
+        for (int query = 0; query < 500; query++) {
+            int[] items = randomItems(random);
+            assertArrayEquals(expectedMatches(rules, items), index.matchingRules(items));
+        }
+    }
+
+    @Test
+    public void visitMatchingRulesVisitsTheSameRulesInOrder() {
+        RuleStore rules = randomRules(5000, 3);
+        RuleIndex index = new RuleIndex(rules);
+        Random random = new Random(4);
+        for (int query = 0; query < 500; query++) {
+            int[] items = randomItems(random);
+            List<Integer> visited = new ArrayList<>();
+            index.visitMatchingRules(items, visited::add);
+            assertArrayEquals(expectedMatches(rules, items), visited.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    @Test
+    public void visitMatchingRulesStopsWhenTheVisitorDoes() {
+        RuleStore rules = randomRules(5000, 5);
+        RuleIndex index = new RuleIndex(rules);
+        int[] items = {1, 2, 3, 4, 5, 6, 7, 8};
+        int[] expected = expectedMatches(rules, items);
+        List<Integer> visited = new ArrayList<>();
+        index.visitMatchingRules(items, rule -> {
+            visited.add(rule);
+            return visited.size() < 3;
+        });
+        assertEquals(Math.min(3, expected.length), visited.size());
+    }
+}
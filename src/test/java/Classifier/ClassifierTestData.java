@@ -0,0 +1,58 @@
+package Classifier;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates the fixed datasets of the classifier tests: numeric attributes and a yes/no class as the last attribute,
+ * like the instances the RandomTreeBuilder makes. The class depends on the attributes with some noise, so the trees
+ * have both pure and mixed leaves.
+ */
+final class ClassifierTestData {
+
+    static final int ATTRIBUTES = 4;
+
+    private ClassifierTestData() {
+    }
+
+    static ArrayList<Attribute> attributes() {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            attributes.add(new Attribute("x" + i));
+        }
+        attributes.add(new Attribute("label", Arrays.asList("yes", "no")));
+        return attributes;
+    }
+
+    /**
+     * @param missing The fraction of the attribute values that is missing
+     */
+    static Instances dataset(int rows, long seed, double missing) {
+        Random random = new Random(seed);
+        Instances instances = new Instances("theData", attributes(), rows);
+        instances.setClassIndex(ATTRIBUTES);
+        for (int row = 0; row < rows; row++) {
+            instances.add(new DenseInstance(1, row(random, missing)));
+        }
+        return instances;
+    }
+
+    static double[] row(Random random, double missing) {
+        double[] values = new double[ATTRIBUTES + 1];
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            values[i] = random.nextGaussian();
+        }
+        values[ATTRIBUTES] = values[0] + values[1] * values[2] + 0.5 * random.nextGaussian() > 0 ? 0 : 1;
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            if (random.nextDouble() < missing)
+                values[i] = Utils.missingValue();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,48 @@
+package Classifier;
+
+import org.junit.Test;
+import weka.classifiers.trees.RandomForest;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks that a compiled RandomForest gives the distributions of weka's RandomForest, scoring the trees one after the
+ * other and in parallel.
+ */
+public class CompiledRandomForestTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static RandomForest forest(Instances train) throws Exception {
+        RandomForest forest = new RandomForest();
+        forest.setNumIterations(20);
+        forest.setNumExecutionSlots(1);
+        forest.buildClassifier(train);
+        return forest;
+    }
+
+    private static void assertSameDistributions(RandomForest forest, Instances test) throws Exception {
+        CompiledRandomForest compiled = CompiledRandomForest.compile(forest, test.numClasses());
+        for (int i = 0; i < test.numInstances(); i++) {
+            Instance instance = test.instance(i);
+            double[] values = Arrays.copyOf(instance.toDoubleArray(), instance.numAttributes() - 1);
+            double[] expected = forest.distributionForInstance(instance);
+            assertArrayEquals("instance " + i, expected, compiled.distributionForValues(values), DELTA);
+            assertArrayEquals("instance " + i, expected, compiled.distributionForValuesParallel(values), DELTA);
+        }
+    }
+
+    @Test
+    public void givesTheDistributionsOfWeka() throws Exception {
+        assertSameDistributions(forest(ClassifierTestData.dataset(2000, 1, 0)), ClassifierTestData.dataset(500, 2, 0));
+    }
+
+    @Test
+    public void givesTheDistributionsOfWekaForMissingValues() throws Exception {
+        assertSameDistributions(forest(ClassifierTestData.dataset(2000, 3, 0.1)), ClassifierTestData.dataset(500, 4, 0.2));
+    }
+}
@@ -0,0 +1,48 @@
+package Classifier;
+
+import org.junit.Test;
+import weka.classifiers.trees.RandomTree;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks that a compiled RandomTree gives exactly the distributions of weka's RandomTree.
+ */
+public class CompiledRandomTreeTest {
+
+    private static void assertSameDistributions(RandomTree tree, Instances test) throws Exception {
+        CompiledRandomTree compiled = CompiledRandomTree.compile(tree);
+        for (int i = 0; i < test.numInstances(); i++) {
+            Instance instance = test.instance(i);
+            double[] values = Arrays.copyOf(instance.toDoubleArray(), instance.numAttributes() - 1);
+            assertArrayEquals("instance " + i, tree.distributionForInstance(instance), compiled.distributionForValues(values), 0);
+        }
+    }
+
+    @Test
+    public void givesTheDistributionsOfWeka() throws Exception {
+        RandomTree tree = new RandomTree();
+        tree.buildClassifier(ClassifierTestData.dataset(2000, 1, 0));
+        assertSameDistributions(tree, ClassifierTestData.dataset(1000, 2, 0));
+    }
+
+    @Test
+    public void givesTheDistributionsOfWekaForMissingValues() throws Exception {
+        RandomTree tree = new RandomTree();
+        tree.buildClassifier(ClassifierTestData.dataset(2000, 3, 0.1));
+        assertSameDistributions(tree, ClassifierTestData.dataset(1000, 4, 0.2));
+    }
+
+    @Test
+    public void givesTheDistributionsOfWekaForAPrunedTree() throws Exception {
+        RandomTree tree = new RandomTree();
+        tree.setMaxDepth(3);
+        tree.setMinNum(20);
+        tree.buildClassifier(ClassifierTestData.dataset(2000, 5, 0));
+        assertSameDistributions(tree, ClassifierTestData.dataset(1000, 6, 0.1));
+    }
+}
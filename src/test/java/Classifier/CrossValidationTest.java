@@ -0,0 +1,48 @@
+package Classifier;
+
+import org.junit.Test;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.trees.RandomForest;
+import weka.classifiers.trees.RandomTree;
+import weka.core.Instances;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the parallel cross-validation gives the accuracy and AUC of weka's Evaluation.crossValidateModel.
+ */
+public class CrossValidationTest {
+
+    private static final double DELTA = 1e-12;
+
+    private static void assertSameAsWeka(AbstractClassifier classifier, Instances data, int folds) throws Exception {
+        Evaluation evaluation = new Evaluation(data);
+        evaluation.crossValidateModel(AbstractClassifier.makeCopy(classifier), data, folds, new Random(1));
+        CrossValidation crossValidation = CrossValidation.run(classifier, data, folds);
+        assertEquals(folds, crossValidation.getFolds());
+        assertEquals(folds, crossValidation.getFoldTimes().length);
+        assertEquals(evaluation.pctCorrect() / 100, crossValidation.getAccuracy(), DELTA);
+        assertEquals(evaluation.weightedAreaUnderROC(), crossValidation.getAreaUnderRoc(), DELTA);
+    }
+
+    @Test
+    public void randomTreeGivesTheResultOfWeka() throws Exception {
+        assertSameAsWeka(new RandomTree(), ClassifierTestData.dataset(1000, 1, 0.05), 10);
+    }
+
+    @Test
+    public void randomForestGivesTheResultOfWeka() throws Exception {
+        RandomForest forest = new RandomForest();
+        forest.setNumIterations(10);
+        forest.setNumExecutionSlots(4);
+        assertSameAsWeka(forest, ClassifierTestData.dataset(500, 2, 0), 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void foldsCanNotExceedTheInstances() throws Exception {
+        CrossValidation.run(new RandomTree(), ClassifierTestData.dataset(5, 3, 0), 6);
+    }
+}
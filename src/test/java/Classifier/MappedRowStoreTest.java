@@ -0,0 +1,164 @@
+package Classifier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import weka.classifiers.trees.RandomForest;
+import weka.classifiers.trees.RandomTree;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks that instances read from a MappedRowStore behave like the dense instances of the same data.
+ */
+public class MappedRowStoreTest {
+
+    /**
+     * Small segments, so the data of the tests spans many segments
+     */
+    private static final long SEGMENT_BYTES = 4000;
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("mapped-row-store").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private Instances mapped(Instances dense) throws IOException {
+        MappedRowStore store = new MappedRowStore(dense.numAttributes(), directory, SEGMENT_BYTES);
+        for (int row = 0; row < dense.numInstances(); row++) {
+            store.add(dense.instance(row).toDoubleArray());
+        }
+        return store.toInstances(dense.relationName(), ClassifierTestData.attributes(), dense.classIndex());
+    }
+
+    private static void assertSameValues(Instances expected, Instances actual) {
+        assertEquals(expected.numInstances(), actual.numInstances());
+        for (int row = 0; row < expected.numInstances(); row++) {
+            assertArrayEquals(expected.instance(row).toDoubleArray(), actual.instance(row).toDoubleArray(), 0);
+        }
+    }
+
+    @Test
+    public void mappedInstancesHaveTheValuesOfTheRows() throws Exception {
+        Instances dense = ClassifierTestData.dataset(1000, 1, 0.1);
+        Instances mapped = mapped(dense);
+        assertSameValues(dense, mapped);
+        for (int row = 0; row < dense.numInstances(); row++) {
+            for (int column = 0; column < dense.numAttributes(); column++) {
+                assertEquals(dense.instance(row).value(column), mapped.instance(row).value(column), 0);
+            }
+        }
+    }
+
+    @Test
+    public void treesBuiltOnMappedInstancesAreTheSame() throws Exception {
+        Instances dense = ClassifierTestData.dataset(1000, 2, 0.05);
+        Instances mapped = mapped(dense);
+        Instances test = ClassifierTestData.dataset(300, 3, 0.1);
+
+        RandomTree denseTree = new RandomTree();
+        denseTree.buildClassifier(dense);
+        RandomTree mappedTree = new RandomTree();
+        mappedTree.buildClassifier(mapped);
+        RandomForest denseForest = new RandomForest();
+        denseForest.setNumIterations(10);
+        denseForest.setNumExecutionSlots(1);
+        denseForest.buildClassifier(dense);
+        RandomForest mappedForest = new RandomForest();
+        mappedForest.setNumIterations(10);
+        mappedForest.setNumExecutionSlots(1);
+        mappedForest.buildClassifier(mapped);
+        for (int i = 0; i < test.numInstances(); i++) {
+            Instance instance = test.instance(i);
+            assertArrayEquals(denseTree.distributionForInstance(instance), mappedTree.distributionForInstance(instance), 0);
+            assertArrayEquals(denseForest.distributionForInstance(instance), mappedForest.distributionForInstance(instance), 0);
+        }
+    }
+
+    @Test
+    public void changesAreMadeToACopyOfTheRow() throws Exception {
+        Instances dense = ClassifierTestData.dataset(200, 4, 0.2);
+        Instances mapped = mapped(dense);
+        Instance original = mapped.instance(150);
+        Instance changed = (Instance) original.copy();
+        changed.setValue(0, 42);
+        assertEquals(42, changed.value(0), 0);
+        assertEquals(dense.instance(150).value(0), original.value(0), 0);
+
+        Instance copyOfChanged = (Instance) changed.copy();
+        copyOfChanged.setValue(1, 43);
+        assertEquals(42, copyOfChanged.value(0), 0);
+        assertEquals(dense.instance(150).value(1), changed.value(1), 0);
+
+        double[] replacements = new double[dense.numAttributes()];
+        for (int row = 0; row < mapped.numInstances(); row++) {
+            Instance instance = (Instance) mapped.instance(row).copy();
+            instance.replaceMissingValues(replacements);
+            assertFalse(instance.hasMissingValue());
+        }
+        assertSameValues(dense, mapped(dense));
+    }
+
+    @Test
+    public void attributesCanBeDeletedAndInserted() throws Exception {
+        Instances dense = ClassifierTestData.dataset(300, 5, 0.1);
+        Instances mapped = mapped(dense);
+        dense.deleteAttributeAt(1);
+        mapped.deleteAttributeAt(1);
+        assertSameValues(dense, mapped);
+        dense.insertAttributeAt(new weka.core.Attribute("inserted"), 2);
+        mapped.insertAttributeAt(new weka.core.Attribute("inserted"), 2);
+        assertSameValues(dense, mapped);
+    }
+
+    @Test
+    public void mappedInstancesAreSerializedWithTheirValues() throws Exception {
+        Instances dense = ClassifierTestData.dataset(300, 6, 0.1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SerializationHelper.write(bytes, mapped(dense));
+        Instances read = (Instances) SerializationHelper.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertSameValues(dense, read);
+    }
+
+    @Test
+    public void snapshotsAreReadBackWithTheSameValues() throws Exception {
+        Instances dense = ClassifierTestData.dataset(1000, 7, 0.1);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < dense.numAttributes(); i++) {
+            names.add(dense.attribute(i).name());
+        }
+        File file = new File(directory, "snapshot");
+        new InstanceSnapshot(names, dense).write(file);
+        InstanceSnapshot snapshot = InstanceSnapshot.read(file, bindingNames -> ClassifierTestData.attributes(), false);
+        assertEquals(names, snapshot.getNames());
+        assertEquals(dense.classIndex(), snapshot.getInstances().classIndex());
+        assertSameValues(dense, snapshot.getInstances());
+        assertEquals(1, directory.list().length);
+    }
+}
@@ -0,0 +1,55 @@
+package Main;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that the model cache stays within its budget, also when a cached model grows.
+ */
+public class ModelCacheTest {
+
+    private static long usedMemory(ModelCache cache) {
+        Map<String, Object> statistics = cache.getStatistics();
+        return (Long) statistics.get("usedMemory");
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedModels() throws Exception {
+        ModelCache cache = new ModelCache(100);
+        Object first = new Object();
+        Object second = new Object();
+        cache.get(ModelCache.ModelType.ASSOCIATOR, "first", () -> first, model -> 60);
+        cache.get(ModelCache.ModelType.ASSOCIATOR, "second", () -> second, model -> 60);
+        assertEquals(1, cache.getModels(ModelCache.ModelType.ASSOCIATOR).size());
+        assertSame(second, cache.getMostRecent(ModelCache.ModelType.ASSOCIATOR));
+        assertEquals(60, usedMemory(cache));
+    }
+
+    @Test
+    public void remeasuringAGrownModelEvictsOtherModels() throws Exception {
+        ModelCache cache = new ModelCache(100);
+        AtomicLong grownSize = new AtomicLong(30);
+        cache.get(ModelCache.ModelType.CLASSIFIER, "other", Object::new, model -> 40);
+        Object grown = cache.get(ModelCache.ModelType.ASSOCIATOR, "grown", Object::new, model -> grownSize.get());
+        assertEquals(70, usedMemory(cache));
+
+        grownSize.set(80);
+        cache.remeasure(ModelCache.ModelType.ASSOCIATOR, "grown");
+        assertEquals(80, usedMemory(cache));
+        assertNull(cache.getMostRecent(ModelCache.ModelType.CLASSIFIER));
+        assertSame(grown, cache.getMostRecent(ModelCache.ModelType.ASSOCIATOR));
+    }
+
+    @Test
+    public void remeasuringAModelThatIsNotCachedDoesNothing() {
+        ModelCache cache = new ModelCache(100);
+        cache.remeasure(ModelCache.ModelType.ASSOCIATOR, "missing");
+        assertEquals(0, usedMemory(cache));
+    }
+}